@@ -0,0 +1,100 @@
+package com.capgo.mediasession;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+import android.util.Log;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+final class ArtworkLoader {
+
+    private static final String TAG = "CapgoMediaSession";
+    // A stalled server must not hold a cover download, and the ones queued behind it, forever.
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 15000;
+
+    private ArtworkLoader() {}
+
+    /**
+     * Returns the first usable artwork source of a `MediaImage[]` array, or null.
+     */
+    static String firstSource(JSONArray artworkArray) {
+        if (artworkArray == null) {
+            return null;
+        }
+        for (int i = 0; i < artworkArray.length(); i++) {
+            JSONObject artworkJson = artworkArray.optJSONObject(i);
+            String src = artworkJson != null ? artworkJson.optString("src", null) : null;
+            if (src != null) {
+                return src;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a key identifying the cover behind {@code src}, short enough to keep around even
+     * when the source is an inline data URL.
+     */
+    static String cacheKey(String src) {
+        if (src == null) {
+            return null;
+        }
+        if (src.length() <= 512) {
+            return src;
+        }
+        return "inline:" + src.length() + ":" + Integer.toHexString(src.hashCode());
+    }
+
+    /**
+     * Returns {@code bitmap} scaled down so its longest side is at most {@code maxSize}.
+     */
+    static Bitmap downscale(Bitmap bitmap, int maxSize) {
+        int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longestSide <= maxSize) {
+            return bitmap;
+        }
+        float scale = (float) maxSize / longestSide;
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        return Bitmap.createScaledBitmap(bitmap, width, height, true);
+    }
+
+    static Bitmap load(String url) throws IOException {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+
+        boolean blobUrl = url.startsWith("blob:");
+        if (blobUrl) {
+            Log.i(TAG, "Blob URLs are not supported for media artwork");
+            return null;
+        }
+
+        boolean httpUrl = url.startsWith("http");
+        if (httpUrl) {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setDoInput(true);
+            connection.connect();
+            try (InputStream inputStream = connection.getInputStream()) {
+                return BitmapFactory.decodeStream(inputStream);
+            }
+        }
+
+        int base64Index = url.indexOf(";base64,");
+        if (base64Index != -1) {
+            String base64Data = url.substring(base64Index + 8);
+            byte[] decoded = Base64.decode(base64Data, Base64.DEFAULT);
+            return BitmapFactory.decodeByteArray(decoded, 0, decoded.length);
+        }
+
+        return null;
+    }
+}
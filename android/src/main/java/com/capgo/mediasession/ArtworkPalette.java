@@ -0,0 +1,108 @@
+package com.capgo.mediasession;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.palette.graphics.Palette;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Extracts notification colors from cover art on a background thread, once per cover.
+ */
+final class ArtworkPalette {
+
+    private static final String TAG = "CapgoMediaSession";
+    private static final int MAX_CACHED_COVERS = 32;
+    private static final int MAX_COLOR_COUNT = 16;
+    // Palette downsamples to roughly this many pixels before quantizing.
+    private static final int RESIZE_BITMAP_AREA = 64 * 64;
+
+    /**
+     * Colors are 0 when the cover has no usable color.
+     */
+    static final class Colors {
+
+        final int dominant;
+        final int vibrant;
+
+        Colors(int dominant, int vibrant) {
+            this.dominant = dominant;
+            this.vibrant = vibrant;
+        }
+    }
+
+    interface Callback {
+        void onColorsExtracted(String artworkKey, Colors colors);
+    }
+
+    // Guarded by pending, so a cover is never both missing from the cache and not pending while
+    // its extraction finishes.
+    private final LruCache<String, Colors> cache = new LruCache<>(MAX_CACHED_COVERS);
+    private final Set<String> pending = new HashSet<>();
+    private final ExecutorService executor;
+    private final Callback callback;
+
+    ArtworkPalette(Callback callback) {
+        this(callback, Executors.newSingleThreadExecutor());
+    }
+
+    ArtworkPalette(Callback callback, ExecutorService executor) {
+        this.callback = callback;
+        this.executor = executor;
+    }
+
+    Colors get(String artworkKey) {
+        if (artworkKey == null) {
+            return null;
+        }
+        synchronized (pending) {
+            return cache.get(artworkKey);
+        }
+    }
+
+    /**
+     * Schedules extraction for {@code artworkKey} unless its colors are cached or already being
+     * computed. The callback runs on the extraction thread.
+     */
+    void extract(String artworkKey, Bitmap artwork) {
+        if (artworkKey == null || artwork == null || executor.isShutdown()) {
+            return;
+        }
+        synchronized (pending) {
+            if (cache.get(artworkKey) != null || !pending.add(artworkKey)) {
+                return;
+            }
+        }
+        executor.execute(() -> {
+            Colors colors = null;
+            try {
+                Palette palette = Palette.from(artwork)
+                    .maximumColorCount(MAX_COLOR_COUNT)
+                    .resizeBitmapArea(RESIZE_BITMAP_AREA)
+                    .clearFilters()
+                    .generate();
+                Palette.Swatch dominantSwatch = palette.getDominantSwatch();
+                int dominant = dominantSwatch != null ? dominantSwatch.getRgb() : 0;
+                colors = new Colors(dominant, palette.getVibrantColor(dominant));
+            } catch (RuntimeException ex) {
+                Log.w(TAG, "Unable to extract artwork colors", ex);
+            }
+            synchronized (pending) {
+                if (colors != null) {
+                    cache.put(artworkKey, colors);
+                }
+                pending.remove(artworkKey);
+            }
+            if (colors != null) {
+                callback.onColorsExtracted(artworkKey, colors);
+            }
+        });
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
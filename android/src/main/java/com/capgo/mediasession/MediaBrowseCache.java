@@ -0,0 +1,59 @@
+package com.capgo.mediasession;
+
+import android.support.v4.media.MediaBrowserCompat;
+import android.util.LruCache;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LRU cache of browse pages already loaded from JS. Pages are grouped by parent id, so a parent
+ * is evicted or invalidated with all of its pages, and the size is counted in pages.
+ */
+public class MediaBrowseCache {
+
+    static final int DEFAULT_MAX_PAGES = 64;
+
+    private final LruCache<String, Map<String, List<MediaBrowserCompat.MediaItem>>> parents;
+
+    MediaBrowseCache(int maxPages) {
+        parents = new LruCache<String, Map<String, List<MediaBrowserCompat.MediaItem>>>(maxPages) {
+            @Override
+            protected int sizeOf(String parentId, Map<String, List<MediaBrowserCompat.MediaItem>> pages) {
+                return pages.size();
+            }
+        };
+    }
+
+    public synchronized void setMaxPages(int newMaxPages) {
+        parents.resize(Math.max(1, newMaxPages));
+    }
+
+    private static String pageKey(int page, int pageSize) {
+        return page + ":" + pageSize;
+    }
+
+    public synchronized List<MediaBrowserCompat.MediaItem> get(String parentId, int page, int pageSize) {
+        Map<String, List<MediaBrowserCompat.MediaItem>> pages = parents.get(parentId);
+        return pages != null ? pages.get(pageKey(page, pageSize)) : null;
+    }
+
+    public synchronized void put(String parentId, int page, int pageSize, List<MediaBrowserCompat.MediaItem> children) {
+        // LruCache only sizes an entry when it is put, so the pages are copied and put back.
+        Map<String, List<MediaBrowserCompat.MediaItem>> pages = parents.get(parentId);
+        pages = pages != null ? new HashMap<>(pages) : new HashMap<>();
+        pages.put(pageKey(page, pageSize), children);
+        parents.put(parentId, pages);
+    }
+
+    /**
+     * Drops every cached page of {@code parentId}, or the whole cache when it is null.
+     */
+    public synchronized void invalidate(String parentId) {
+        if (parentId == null) {
+            parents.evictAll();
+        } else {
+            parents.remove(parentId);
+        }
+    }
+}
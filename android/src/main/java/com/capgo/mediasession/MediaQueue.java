@@ -0,0 +1,236 @@
+package com.capgo.mediasession;
+
+import android.graphics.Bitmap;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the play queue and keeps the artwork of the next few items decoded, so a skip can swap
+ * in the prepared metadata without waiting on JS or the network.
+ */
+public class MediaQueue {
+
+    private static final String TAG = "CapgoMediaSession";
+
+    static final int DEFAULT_PREFETCH_COUNT = 2;
+    static final int DEFAULT_PREFETCH_MEMORY_BUDGET = 8 * 1024 * 1024;
+
+    public interface Listener {
+        void onItemPrepared(MediaQueueItem item);
+    }
+
+    interface ArtworkSource {
+        Bitmap load(String src) throws IOException;
+    }
+
+    private final ExecutorService prefetchExecutor;
+    private final ArtworkSource artworkSource;
+    private final Listener listener;
+
+    private List<MediaQueueItem> items = Collections.emptyList();
+    private int activeIndex = -1;
+    private int prefetchCount = DEFAULT_PREFETCH_COUNT;
+    private int prefetchMemoryBudget = DEFAULT_PREFETCH_MEMORY_BUDGET;
+    private int generation = 0;
+    private boolean prefetchEnabled = true;
+    private int artworkMaxSize = 0;
+
+    MediaQueue(Listener listener) {
+        this(listener, ArtworkLoader::load, Executors.newSingleThreadExecutor());
+    }
+
+    MediaQueue(Listener listener, ArtworkSource artworkSource, ExecutorService prefetchExecutor) {
+        this.listener = listener;
+        this.artworkSource = artworkSource;
+        this.prefetchExecutor = prefetchExecutor;
+    }
+
+    public synchronized void setItems(List<MediaQueueItem> newItems, int newActiveIndex) {
+        items = new ArrayList<>(newItems);
+        activeIndex = items.isEmpty() ? -1 : Math.max(0, Math.min(newActiveIndex, items.size() - 1));
+        generation++;
+        schedulePrefetch();
+    }
+
+    public synchronized void setPrefetchCount(int newPrefetchCount) {
+        prefetchCount = Math.max(0, newPrefetchCount);
+    }
+
+    public synchronized void setPrefetchMemoryBudget(int newPrefetchMemoryBudget) {
+        prefetchMemoryBudget = Math.max(0, newPrefetchMemoryBudget);
+    }
+
+    /**
+     * Disabling prefetch also drops every decoded artwork the queue holds.
+     */
+    public synchronized void setPrefetchEnabled(boolean newPrefetchEnabled) {
+        if (prefetchEnabled != newPrefetchEnabled) {
+            prefetchEnabled = newPrefetchEnabled;
+            generation++;
+            schedulePrefetch();
+        }
+    }
+
+    /**
+     * Caps the longest side of prefetched artwork, or lifts the cap when 0. Artwork already held is
+     * downscaled in place when the cap tightens and fetched again when it is lifted.
+     */
+    public synchronized void setArtworkMaxSize(int newArtworkMaxSize) {
+        if (artworkMaxSize == newArtworkMaxSize) {
+            return;
+        }
+        boolean tightened = newArtworkMaxSize > 0 && (artworkMaxSize == 0 || newArtworkMaxSize < artworkMaxSize);
+        artworkMaxSize = newArtworkMaxSize;
+        for (MediaQueueItem item : items) {
+            Bitmap bitmap = item.getArtwork();
+            if (bitmap != null) {
+                item.setArtwork(tightened ? ArtworkLoader.downscale(bitmap, artworkMaxSize) : null);
+            }
+        }
+        generation++;
+        schedulePrefetch();
+    }
+
+    public synchronized void collectArtwork(Set<Bitmap> artwork) {
+        for (MediaQueueItem item : items) {
+            Bitmap bitmap = item.getArtwork();
+            if (bitmap != null) {
+                artwork.add(bitmap);
+            }
+        }
+    }
+
+    public synchronized int getActiveIndex() {
+        return activeIndex;
+    }
+
+    public synchronized MediaQueueItem getActiveItem() {
+        return activeIndex >= 0 ? items.get(activeIndex) : null;
+    }
+
+    /**
+     * Makes the item with {@code id} active and returns it, or returns null when it is not queued.
+     */
+    public synchronized MediaQueueItem setActiveItem(String id) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getId().equals(id)) {
+                if (i != activeIndex) {
+                    activeIndex = i;
+                    generation++;
+                    schedulePrefetch();
+                }
+                return items.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves the active item by {@code offset} and returns it, or returns null when that would leave
+     * the queue.
+     */
+    public synchronized MediaQueueItem skip(int offset) {
+        int nextIndex = activeIndex + offset;
+        if (activeIndex < 0 || nextIndex < 0 || nextIndex >= items.size()) {
+            return null;
+        }
+        activeIndex = nextIndex;
+        generation++;
+        schedulePrefetch();
+        return items.get(activeIndex);
+    }
+
+    public synchronized List<MediaSessionCompat.QueueItem> toSessionQueue() {
+        List<MediaSessionCompat.QueueItem> sessionQueue = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            sessionQueue.add(items.get(i).toSessionQueueItem(i));
+        }
+        return sessionQueue;
+    }
+
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    private void schedulePrefetch() {
+        // Drop everything outside the active item and its prefetch window so the budget only
+        // ever covers artwork that a skip could actually use.
+        int windowEnd = Math.min(items.size() - 1, activeIndex + prefetchCount);
+        for (int i = 0; i < items.size(); i++) {
+            if (!prefetchEnabled || i < activeIndex || i > windowEnd) {
+                items.get(i).setArtwork(null);
+            }
+        }
+        if (!prefetchEnabled || activeIndex < 0) {
+            return;
+        }
+
+        final int scheduledGeneration = generation;
+        final int scheduledArtworkMaxSize = artworkMaxSize;
+        final List<MediaQueueItem> window = new ArrayList<>(items.subList(activeIndex, windowEnd + 1));
+        if (!prefetchExecutor.isShutdown()) {
+            prefetchExecutor.execute(() -> prefetch(window, scheduledGeneration, scheduledArtworkMaxSize));
+        }
+    }
+
+    private boolean isInWindow(MediaQueueItem item) {
+        int index = items.indexOf(item);
+        return index >= 0 && index >= activeIndex && index <= activeIndex + prefetchCount;
+    }
+
+    private void prefetch(List<MediaQueueItem> window, int scheduledGeneration, int maxSize) {
+        int heldBytes = 0;
+        for (MediaQueueItem item : window) {
+            heldBytes += item.getArtworkBytes();
+        }
+
+        for (MediaQueueItem item : window) {
+            if (item.isPrepared()) {
+                continue;
+            }
+            synchronized (this) {
+                if (scheduledGeneration != generation) {
+                    return;
+                }
+            }
+            if (heldBytes >= prefetchMemoryBudget) {
+                Log.d(TAG, "Queue prefetch stopped at memory budget (" + heldBytes + " bytes)");
+                return;
+            }
+
+            Bitmap bitmap;
+            try {
+                bitmap = artworkSource.load(item.getArtworkSrc());
+            } catch (IOException ex) {
+                Log.w(TAG, "Unable to prefetch artwork for queue item " + item.getId(), ex);
+                continue;
+            }
+            if (bitmap == null) {
+                continue;
+            }
+            if (maxSize > 0) {
+                bitmap = ArtworkLoader.downscale(bitmap, maxSize);
+            }
+            if (heldBytes + bitmap.getAllocationByteCount() > prefetchMemoryBudget) {
+                Log.d(TAG, "Skipping artwork for queue item " + item.getId() + ", it does not fit the memory budget");
+                continue;
+            }
+
+            synchronized (this) {
+                if (!prefetchEnabled || !isInWindow(item)) {
+                    return;
+                }
+                item.setArtwork(bitmap);
+            }
+            heldBytes += bitmap.getAllocationByteCount();
+            listener.onItemPrepared(item);
+        }
+    }
+}
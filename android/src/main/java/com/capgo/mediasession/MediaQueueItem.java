@@ -0,0 +1,89 @@
+package com.capgo.mediasession;
+
+import android.graphics.Bitmap;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class MediaQueueItem {
+
+    private final String id;
+    private final String title;
+    private final String artist;
+    private final String album;
+    private final String artworkSrc;
+
+    private volatile Bitmap artwork;
+    private volatile boolean prepared;
+
+    MediaQueueItem(String id, String title, String artist, String album, String artworkSrc) {
+        this.id = id;
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.artworkSrc = artworkSrc;
+        this.prepared = artworkSrc == null;
+    }
+
+    static MediaQueueItem fromJSON(JSONObject json) throws JSONException {
+        return new MediaQueueItem(
+            json.getString("id"),
+            json.optString("title", ""),
+            json.optString("artist", ""),
+            json.optString("album", ""),
+            ArtworkLoader.firstSource(json.optJSONArray("artwork"))
+        );
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    public String getArtworkSrc() {
+        return artworkSrc;
+    }
+
+    public Bitmap getArtwork() {
+        return artwork;
+    }
+
+    /**
+     * Whether the item's metadata, artwork included, can be swapped in without any I/O.
+     */
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    void setArtwork(Bitmap newArtwork) {
+        artwork = newArtwork;
+        prepared = newArtwork != null || artworkSrc == null;
+    }
+
+    int getArtworkBytes() {
+        Bitmap bitmap = artwork;
+        return bitmap != null ? bitmap.getAllocationByteCount() : 0;
+    }
+
+    MediaSessionCompat.QueueItem toSessionQueueItem(long queueId) {
+        MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+            .setMediaId(id)
+            .setTitle(title)
+            .setSubtitle(artist)
+            .setDescription(album)
+            .build();
+        return new MediaSessionCompat.QueueItem(description, queueId);
+    }
+}
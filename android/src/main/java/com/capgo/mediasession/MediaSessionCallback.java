@@ -13,43 +13,45 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback {
 
     @Override
     public void onPlay() {
-        plugin.actionCallback("play");
+        plugin.runOnPluginThread(() -> plugin.actionCallback("play"));
     }
 
     @Override
     public void onPause() {
-        plugin.actionCallback("pause");
+        plugin.runOnPluginThread(() -> plugin.actionCallback("pause"));
     }
 
     @Override
     public void onSeekTo(long pos) {
-        JSObject data = new JSObject();
-        data.put("seekTime", (double) pos / 1000.0);
-        plugin.actionCallback("seekto", data);
+        plugin.runOnPluginThread(() -> {
+            JSObject data = new JSObject();
+            data.put("seekTime", plugin.clampSeekTime((double) pos / 1000.0));
+            plugin.actionCallback("seekto", data);
+        });
     }
 
     @Override
     public void onRewind() {
-        plugin.actionCallback("seekbackward");
+        plugin.runOnPluginThread(() -> plugin.actionCallback("seekbackward"));
     }
 
     @Override
     public void onFastForward() {
-        plugin.actionCallback("seekforward");
+        plugin.runOnPluginThread(() -> plugin.actionCallback("seekforward"));
     }
 
     @Override
     public void onSkipToPrevious() {
-        plugin.actionCallback("previoustrack");
+        plugin.skipCallback("previoustrack", -1);
     }
 
     @Override
     public void onSkipToNext() {
-        plugin.actionCallback("nexttrack");
+        plugin.skipCallback("nexttrack", 1);
     }
 
     @Override
     public void onStop() {
-        plugin.actionCallback("stop");
+        plugin.runOnPluginThread(() -> plugin.actionCallback("stop"));
     }
 }
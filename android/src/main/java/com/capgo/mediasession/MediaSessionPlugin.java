@@ -5,10 +5,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
-import android.util.Base64;
 import android.util.Log;
 import androidx.core.content.ContextCompat;
 import com.getcapacitor.JSArray;
@@ -18,59 +21,91 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 @CapacitorPlugin(name = "MediaSession")
-public class MediaSessionPlugin extends Plugin {
+public class MediaSessionPlugin extends Plugin implements MediaSessionService.BrowseSource {
 
     private final String pluginVersion = "8.0.28";
 
     private static final String TAG = "CapgoMediaSession";
 
+    private static final int DOWNSCALED_ARTWORK_SIZE = 256;
+
     private boolean startServiceOnlyDuringPlayback = true;
+    private boolean pauseOnBecomingNoisy = false;
+    private boolean handleAudioFocus = false;
+    private boolean pauseWhenDucked = false;
 
     private String title = "";
     private String artist = "";
     private String album = "";
     private Bitmap artwork;
+    private String artworkSrc;
+    private int memoryTier = MediaSessionService.MEMORY_TIER_FULL;
     private String playbackState = "none";
     private double duration = 0.0;
+    private boolean live = false;
     private double position = 0.0;
     private double playbackRate = 1.0;
 
     private final Map<String, PluginCall> actionHandlers = new HashMap<>();
 
+    private PluginCall browseHandler;
+    private int maxCachedBrowsePages = MediaBrowseCache.DEFAULT_MAX_PAGES;
+
+    private final SessionEventLog events = SessionEventLog.get();
+
+    private final MediaQueue queue = new MediaQueue(this::onQueueItemPrepared);
+    private final MediaQueue.ArtworkSource artworkSource;
+    // Covers are downloaded here so the plugin thread, which also applies interruption pauses,
+    // never waits on the network.
+    private final ExecutorService artworkExecutor;
+    private boolean swapQueueOnPrevious = false;
+
     private MediaSessionService service;
 
+    // Plugin state and every call into the service are confined to the plugin thread, the one
+    // @PluginMethods run on. Callbacks arriving on other threads hop there first.
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName componentName, IBinder binder) {
-            MediaSessionService.LocalBinder localBinder = (MediaSessionService.LocalBinder) binder;
-            service = localBinder.getService();
+            MediaSessionService connectedService = ((MediaSessionService.LocalBinder) binder).getService();
             if (getActivity() == null) {
                 return;
             }
             Intent launchIntent = new Intent(getActivity(), getActivity().getClass());
-            service.connectAndInitialize(MediaSessionPlugin.this, launchIntent);
-            updateServiceMetadata();
-            updateServicePlaybackState();
-            updateServicePositionState();
+            connectedService.connectAndInitialize(MediaSessionPlugin.this, launchIntent);
+            runOnPluginThread(() -> attachService(connectedService));
         }
 
         @Override
         public void onServiceDisconnected(ComponentName componentName) {
             Log.d(TAG, "Disconnected from MediaSessionService");
-            service = null;
+            runOnPluginThread(() -> service = null);
         }
     };
 
+    public MediaSessionPlugin() {
+        this(ArtworkLoader::load, Executors.newSingleThreadExecutor());
+    }
+
+    MediaSessionPlugin(MediaQueue.ArtworkSource artworkSource, ExecutorService artworkExecutor) {
+        this.artworkSource = artworkSource;
+        this.artworkExecutor = artworkExecutor;
+    }
+
     @Override
     public void load() {
         super.load();
@@ -79,6 +114,9 @@ public class MediaSessionPlugin extends Plugin {
         if ("always".equals(foregroundServiceConfig)) {
             startServiceOnlyDuringPlayback = false;
         }
+        pauseOnBecomingNoisy = getConfig().getBoolean("pauseOnBecomingNoisy", false);
+        handleAudioFocus = getConfig().getBoolean("handleAudioFocus", false);
+        pauseWhenDucked = getConfig().getBoolean("pauseWhenDucked", false);
 
         if (!startServiceOnlyDuringPlayback) {
             startMediaService();
@@ -89,9 +127,35 @@ public class MediaSessionPlugin extends Plugin {
     protected void handleOnStop() {
         super.handleOnStop();
 
-        if (startServiceOnlyDuringPlayback && service != null && !isPlaybackActive()) {
-            stopMediaService();
+        runOnPluginThread(() -> {
+            if (startServiceOnlyDuringPlayback && service != null && !isPlaybackActive()) {
+                stopMediaService();
+            }
+        });
+    }
+
+    void runOnPluginThread(Runnable runnable) {
+        getBridge().execute(runnable);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        super.handleOnDestroy();
+        queue.shutdown();
+        artworkExecutor.shutdownNow();
+    }
+
+    void attachService(MediaSessionService connectedService) {
+        service = connectedService;
+        service.setMaxCachedBrowsePages(maxCachedBrowsePages);
+        service.setAudioInterruptionHandling(pauseOnBecomingNoisy, handleAudioFocus, pauseWhenDucked);
+        if (service.getMemoryTier() != memoryTier) {
+            applyMemoryTier(service.getMemoryTier());
         }
+        updateServiceQueue();
+        updateServiceMetadata();
+        updateServicePlaybackState();
+        updateServicePositionState();
     }
 
     private void startMediaService() {
@@ -130,10 +194,81 @@ public class MediaSessionPlugin extends Plugin {
         service.setTitle(title);
         service.setArtist(artist);
         service.setAlbum(album);
-        service.setArtwork(artwork);
+        service.setArtwork(artwork, ArtworkLoader.cacheKey(artworkSrc));
+        service.setArtworkUri(artworkSrc);
         service.update();
     }
 
+    private void updateServiceQueue() {
+        if (service == null) {
+            return;
+        }
+        service.setQueue(queue.toSessionQueue());
+        service.setActiveQueueItemId(getActiveQueueItemId());
+        service.update();
+    }
+
+    private long getActiveQueueItemId() {
+        int activeIndex = queue.getActiveIndex();
+        return activeIndex >= 0 ? activeIndex : MediaSessionCompat.QueueItem.UNKNOWN_ID;
+    }
+
+    private void applyQueueItem(MediaQueueItem item) {
+        title = item.getTitle();
+        artist = item.getArtist();
+        album = item.getAlbum();
+        artworkSrc = item.getArtworkSrc();
+        artwork = degradeArtwork(item.getArtwork());
+        if (service != null) {
+            service.setActiveQueueItemId(getActiveQueueItemId());
+        }
+        updateServiceMetadata();
+    }
+
+    private void onQueueItemPrepared(MediaQueueItem item) {
+        runOnPluginThread(() -> {
+            // A skip that outran the prefetch swapped in the text only; fill in the artwork now.
+            if (item == queue.getActiveItem() && artwork == null && Objects.equals(artworkSrc, item.getArtworkSrc())) {
+                artwork = degradeArtwork(item.getArtwork());
+                updateServiceMetadata();
+            }
+        });
+    }
+
+    void onMemoryTierChanged(int tier) {
+        runOnPluginThread(() -> applyMemoryTier(tier));
+    }
+
+    private void applyMemoryTier(int tier) {
+        int previousTier = memoryTier;
+        memoryTier = tier;
+        queue.setPrefetchEnabled(tier < MediaSessionService.MEMORY_TIER_URI_ONLY);
+        queue.setArtworkMaxSize(tier == MediaSessionService.MEMORY_TIER_DOWNSCALED ? DOWNSCALED_ARTWORK_SIZE : 0);
+
+        if (tier < previousTier && artworkSrc != null) {
+            // Only the source was kept while degraded, decode it again at the restored quality.
+            // The degraded cover, if any, stays published until the reload lands.
+            if (tier < MediaSessionService.MEMORY_TIER_URI_ONLY) {
+                loadArtwork(artworkSrc, null);
+            } else {
+                artwork = null;
+            }
+        } else {
+            artwork = degradeArtwork(artwork);
+        }
+        updateServiceMetadata();
+    }
+
+    private Bitmap degradeArtwork(Bitmap bitmap) {
+        if (bitmap == null || memoryTier == MediaSessionService.MEMORY_TIER_FULL) {
+            return bitmap;
+        }
+        if (memoryTier == MediaSessionService.MEMORY_TIER_DOWNSCALED) {
+            return ArtworkLoader.downscale(bitmap, DOWNSCALED_ARTWORK_SIZE);
+        }
+        return null;
+    }
+
     private void updateServicePlaybackState() {
         if (service == null) {
             return;
@@ -154,6 +289,7 @@ public class MediaSessionPlugin extends Plugin {
             return;
         }
 
+        service.setLive(live);
         service.setDuration(Math.round(duration * 1000));
         service.setPosition(Math.round(position * 1000));
         float playbackSpeed = playbackRate == 0.0 ? 1.0F : (float) playbackRate;
@@ -161,65 +297,63 @@ public class MediaSessionPlugin extends Plugin {
         service.update();
     }
 
-    private Bitmap urlToBitmap(String url) throws IOException {
-        if (url == null || url.isEmpty()) {
-            return null;
-        }
-
-        boolean blobUrl = url.startsWith("blob:");
-        if (blobUrl) {
-            Log.i(TAG, "Blob URLs are not supported for media artwork");
-            return null;
-        }
-
-        boolean httpUrl = url.startsWith("http");
-        if (httpUrl) {
-            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-            connection.setDoInput(true);
-            connection.connect();
-            try (InputStream inputStream = connection.getInputStream()) {
-                return BitmapFactory.decodeStream(inputStream);
-            }
-        }
-
-        int base64Index = url.indexOf(";base64,");
-        if (base64Index != -1) {
-            String base64Data = url.substring(base64Index + 8);
-            byte[] decoded = Base64.decode(base64Data, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(decoded, 0, decoded.length);
-        }
-
-        return null;
-    }
-
     @PluginMethod
     public void setMetadata(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setMetadata");
         title = call.getString("title", title);
         artist = call.getString("artist", artist);
         album = call.getString("album", album);
 
-        try {
-            JSArray artworkArray = call.getArray("artwork");
-            if (artworkArray != null) {
-                List<JSONObject> artworkList = artworkArray.toList();
-                for (JSONObject artworkJson : artworkList) {
-                    String src = artworkJson.optString("src", null);
-                    if (src != null) {
-                        artwork = urlToBitmap(src);
-                        break;
-                    }
-                }
+        String src = ArtworkLoader.firstSource(call.getArray("artwork"));
+        // Skipping through the queue already swapped in this cover, don't download it again.
+        boolean inlineArtwork = memoryTier < MediaSessionService.MEMORY_TIER_URI_ONLY;
+        if (src != null && (!src.equals(artworkSrc) || (artwork == null && inlineArtwork))) {
+            if (!src.equals(artworkSrc)) {
+                artwork = null;
+            }
+            artworkSrc = src;
+            if (inlineArtwork) {
+                // The text is published right away, the cover follows once it is decoded.
+                updateServiceMetadata();
+                loadArtwork(src, call);
+                return;
             }
-        } catch (JSONException | IOException ex) {
-            Log.w(TAG, "Unable to parse artwork", ex);
         }
 
         updateServiceMetadata();
         call.resolve();
     }
 
+    /**
+     * Decodes {@code src} on the artwork executor and applies it on the plugin thread, unless a
+     * newer cover or a lower memory tier replaced it meanwhile. Resolves {@code call} either way.
+     */
+    private void loadArtwork(String src, PluginCall call) {
+        artworkExecutor.execute(() -> {
+            Bitmap bitmap = null;
+            try {
+                bitmap = artworkSource.load(src);
+            } catch (IOException ex) {
+                Log.w(TAG, "Unable to load artwork", ex);
+            }
+            Bitmap loadedBitmap = bitmap;
+            runOnPluginThread(() -> {
+                // A failed restore keeps the degraded cover rather than dropping it.
+                boolean replaces = loadedBitmap != null || call != null;
+                if (replaces && src.equals(artworkSrc) && memoryTier < MediaSessionService.MEMORY_TIER_URI_ONLY) {
+                    artwork = degradeArtwork(loadedBitmap);
+                    updateServiceMetadata();
+                }
+                if (call != null) {
+                    call.resolve();
+                }
+            });
+        });
+    }
+
     @PluginMethod
     public void setPlaybackState(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setPlaybackState");
         playbackState = call.getString("playbackState", playbackState);
 
         boolean playbackActive = isPlaybackActive();
@@ -236,6 +370,8 @@ public class MediaSessionPlugin extends Plugin {
 
     @PluginMethod
     public void setPositionState(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setPositionState");
+        live = call.getBoolean("live", live);
         duration = call.getDouble("duration", duration);
         position = call.getDouble("position", position);
         playbackRate = call.getFloat("playbackRate", (float) playbackRate);
@@ -244,8 +380,61 @@ public class MediaSessionPlugin extends Plugin {
         call.resolve();
     }
 
+    @PluginMethod
+    public void setQueue(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setQueue");
+        JSArray itemsArray = call.getArray("items");
+        if (itemsArray == null) {
+            call.reject("items is required");
+            return;
+        }
+
+        List<MediaQueueItem> items = new ArrayList<>();
+        try {
+            List<JSONObject> itemList = itemsArray.toList();
+            for (JSONObject itemJson : itemList) {
+                items.add(MediaQueueItem.fromJSON(itemJson));
+            }
+        } catch (JSONException ex) {
+            call.reject("Unable to parse queue", ex);
+            return;
+        }
+
+        queue.setPrefetchCount(call.getInt("prefetchCount", MediaQueue.DEFAULT_PREFETCH_COUNT));
+        queue.setPrefetchMemoryBudget(call.getInt("prefetchMemoryBudget", MediaQueue.DEFAULT_PREFETCH_MEMORY_BUDGET));
+        queue.setItems(items, call.getInt("activeIndex", 0));
+        swapQueueOnPrevious = call.getBoolean("swapOnPrevious", false);
+
+        updateServiceQueue();
+        // Like the web and iOS implementations, the active item becomes the published metadata.
+        MediaQueueItem active = queue.getActiveItem();
+        if (active != null) {
+            applyQueueItem(active);
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void setActiveQueueItem(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setActiveQueueItem");
+        String id = call.getString("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+
+        MediaQueueItem item = queue.setActiveItem(id);
+        if (item == null) {
+            call.reject("Queue item " + id + " is not in the queue");
+            return;
+        }
+        applyQueueItem(item);
+        call.resolve();
+    }
+
     @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
     public void setActionHandler(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setActionHandler");
         call.setKeepAlive(true);
         String action = call.getString("action");
         if (action != null) {
@@ -258,18 +447,145 @@ public class MediaSessionPlugin extends Plugin {
         }
     }
 
+    /**
+     * Keeps a requested seek time inside the seekable window of a live stream.
+     */
+    public double clampSeekTime(double seekTime) {
+        if (!live) {
+            return seekTime;
+        }
+        return Math.max(0.0, Math.min(seekTime, duration));
+    }
+
     public boolean hasActionHandler(String action) {
         PluginCall handler = actionHandlers.get(action);
         return handler != null && !PluginCall.CALLBACK_ID_DANGLING.equals(handler.getCallbackId());
     }
 
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void setBrowseHandler(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setBrowseHandler");
+        call.setKeepAlive(true);
+        browseHandler = call;
+        maxCachedBrowsePages = call.getInt("maxCachedPages", MediaBrowseCache.DEFAULT_MAX_PAGES);
+        if (service != null) {
+            service.setMaxCachedBrowsePages(maxCachedBrowsePages);
+            service.invalidateBrowseChildren(null);
+        }
+    }
+
+    @PluginMethod
+    public void setBrowseChildren(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "setBrowseChildren");
+        String requestId = call.getString("requestId");
+        JSArray itemsArray = call.getArray("items");
+        if (requestId == null || itemsArray == null) {
+            call.reject("requestId and items are required");
+            return;
+        }
+
+        List<MediaBrowserCompat.MediaItem> children = new ArrayList<>();
+        try {
+            List<JSONObject> itemList = itemsArray.toList();
+            for (JSONObject itemJson : itemList) {
+                children.add(toBrowseItem(itemJson));
+            }
+        } catch (JSONException ex) {
+            call.reject("Unable to parse browse items", ex);
+            return;
+        }
+
+        if (service == null || !service.completeBrowseRequest(requestId, children)) {
+            call.reject("Browse request " + requestId + " is unknown or expired");
+            return;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void invalidateBrowseChildren(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "invalidateBrowseChildren");
+        if (service != null) {
+            service.invalidateBrowseChildren(call.getString("parentId"));
+        }
+        call.resolve();
+    }
+
+    private MediaBrowserCompat.MediaItem toBrowseItem(JSONObject itemJson) throws JSONException {
+        MediaDescriptionCompat.Builder description = new MediaDescriptionCompat.Builder()
+            .setMediaId(itemJson.getString("id"))
+            .setTitle(itemJson.optString("title", ""))
+            .setSubtitle(itemJson.optString("subtitle", ""));
+
+        // Browser clients load icons themselves, only URIs they can resolve are forwarded.
+        String src = ArtworkLoader.firstSource(itemJson.optJSONArray("artwork"));
+        if (src != null && !src.startsWith("data:") && !src.startsWith("blob:")) {
+            description.setIconUri(Uri.parse(src));
+        }
+
+        boolean browsable = itemJson.optBoolean("browsable", false);
+        boolean playable = itemJson.optBoolean("playable", !browsable);
+        int flags = 0;
+        if (browsable) {
+            flags |= MediaBrowserCompat.MediaItem.FLAG_BROWSABLE;
+        }
+        if (playable) {
+            flags |= MediaBrowserCompat.MediaItem.FLAG_PLAYABLE;
+        }
+        return new MediaBrowserCompat.MediaItem(description.build(), flags);
+    }
+
+    @Override
+    public boolean hasBrowseHandler() {
+        return browseHandler != null && !PluginCall.CALLBACK_ID_DANGLING.equals(browseHandler.getCallbackId());
+    }
+
+    @Override
+    public void browseCallback(String requestId, String parentId, int page, int pageSize) {
+        JSObject data = new JSObject();
+        data.put("requestId", requestId);
+        data.put("parentId", parentId);
+        if (page >= 0 && pageSize > 0) {
+            data.put("page", page);
+            data.put("pageSize", pageSize);
+        }
+        runOnPluginThread(() -> browseHandler.resolve(data));
+    }
+
+    public void skipCallback(String action, int offset) {
+        long skipStart = SystemClock.elapsedRealtimeNanos();
+        runOnPluginThread(() -> {
+            // Players usually restart the current track on "previous", which JS could not undo
+            // once the previous item was swapped in, so that direction is opt-in.
+            MediaQueueItem item = offset < 0 && !swapQueueOnPrevious ? null : queue.skip(offset);
+            if (item == null) {
+                actionCallback(action);
+                return;
+            }
+
+            applyQueueItem(item);
+            double skipLatency = (SystemClock.elapsedRealtimeNanos() - skipStart) / 1000000.0;
+            Log.d(
+                TAG,
+                "Swapped in queue item " + item.getId() + " in " + skipLatency + " ms (prepared: " + item.isPrepared() + ")"
+            );
+
+            JSObject data = new JSObject();
+            data.put("queueItemId", item.getId());
+            data.put("skipLatency", skipLatency);
+            actionCallback(action, data);
+        });
+    }
+
     public void actionCallback(String action) {
         actionCallback(action, new JSObject());
     }
 
     public void actionCallback(String action, JSObject data) {
         PluginCall handler = actionHandlers.get(action);
-        if (handler != null && !PluginCall.CALLBACK_ID_DANGLING.equals(handler.getCallbackId())) {
+        boolean handled = handler != null && !PluginCall.CALLBACK_ID_DANGLING.equals(handler.getCallbackId());
+        events.record(SessionEventLog.ACTION_CALLBACK, action, handled ? 1 : 0);
+        if (handled) {
             data.put("action", action);
             handler.resolve(data);
         } else {
@@ -277,6 +593,33 @@ public class MediaSessionPlugin extends Plugin {
         }
     }
 
+    @PluginMethod
+    public void getMemoryState(PluginCall call) {
+        events.record(SessionEventLog.BRIDGE_CALL, "getMemoryState");
+        Set<Bitmap> heldArtwork = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (artwork != null) {
+            heldArtwork.add(artwork);
+        }
+        queue.collectArtwork(heldArtwork);
+        if (service != null) {
+            service.collectArtwork(heldArtwork);
+        }
+        long artworkBytes = 0;
+        for (Bitmap bitmap : heldArtwork) {
+            artworkBytes += bitmap.getAllocationByteCount();
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("tier", MediaSessionService.memoryTierName(memoryTier));
+        ret.put("artworkBytes", artworkBytes);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void dumpDiagnostics(PluginCall call) {
+        call.resolve(events.toJSObject());
+    }
+
     @PluginMethod
     public void getPluginVersion(final PluginCall call) {
         try {
@@ -1,34 +1,88 @@
 package com.capgo.mediasession;
 
 import android.annotation.SuppressLint;
+import android.app.ActivityManager;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
-import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.pm.ServiceInfo;
 import android.graphics.Bitmap;
+import android.media.AudioManager;
+import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+import androidx.media.AudioAttributesCompat;
+import androidx.media.AudioFocusRequestCompat;
+import androidx.media.AudioManagerCompat;
+import androidx.media.MediaBrowserServiceCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 import androidx.media.session.MediaButtonReceiver;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
-public class MediaSessionService extends Service {
+public class MediaSessionService extends MediaBrowserServiceCompat {
 
     private static final String TAG = "MediaSessionService";
     private static final String CHANNEL_ID = "playback";
-    private static final int NOTIFICATION_ID = 1;
+    static final int NOTIFICATION_ID = 1;
+
+    static final String BROWSE_ROOT_ID = "root";
+    static final String BROWSE_RECENT_ROOT_ID = "recent";
+    // The service is exported for MediaBrowser clients, so only the app itself and these system
+    // surfaces may browse it. MediaBrowserServiceCompat has already checked that the package
+    // belongs to the calling uid.
+    private static final Set<String> ALLOWED_BROWSE_CLIENTS = new HashSet<>(
+        Arrays.asList(
+            "com.android.systemui",
+            "com.google.android.projection.gearhead",
+            "com.google.android.wearable.app",
+            "com.google.android.googlequicksearchbox"
+        )
+    );
+    private static final String RECENT_ITEM_PREFERENCES = "CapgoMediaSessionRecent";
+    private static final long BROWSE_REQUEST_TIMEOUT_MS = 10000;
+    static final int MEMORY_TIER_FULL = 0;
+    static final int MEMORY_TIER_DOWNSCALED = 1;
+    static final int MEMORY_TIER_URI_ONLY = 2;
+    static final int MEMORY_TIER_PURGED = 3;
+    private static final String[] MEMORY_TIER_NAMES = { "full", "downscaled", "uri-only", "purged" };
+    // Android never reports that pressure eased, so degraded tiers are re-checked periodically.
+    private static final long MEMORY_RESTORE_CHECK_MS = 60000;
+
+    // Live position reports closer than this to the extrapolated position are not republished.
+    private static final long LIVE_POSITION_TOLERANCE_MS = 1000;
 
     private MediaSessionCompat mediaSession;
     private PlaybackStateCompat.Builder playbackStateBuilder;
@@ -58,19 +112,95 @@ public class MediaSessionService extends Service {
     private String artist = "";
     private String album = "";
     private Bitmap artwork;
+    private String artworkKey;
+    private String artworkUri;
+    private ArtworkPalette.Colors artworkColors;
     private long duration = 0;
+    private boolean live = false;
     private long position = 0;
     private float playbackSpeed = 1.0F;
+    private long positionUpdateTime = SystemClock.elapsedRealtime();
+    private List<MediaSessionCompat.QueueItem> queue = Collections.emptyList();
+    private long activeQueueItemId = MediaSessionCompat.QueueItem.UNKNOWN_ID;
 
     private boolean possibleActionsUpdate = true;
     private boolean playbackStateUpdate = false;
     private boolean mediaMetadataUpdate = false;
     private boolean notificationUpdate = false;
+    private boolean queueUpdate = false;
+
+    static final int DIRTY_POSSIBLE_ACTIONS = 1;
+    static final int DIRTY_PLAYBACK_STATE = 1 << 1;
+    static final int DIRTY_MEDIA_METADATA = 1 << 2;
+    static final int DIRTY_NOTIFICATION = 1 << 3;
+    static final int DIRTY_QUEUE = 1 << 4;
+
+    private final SessionEventLog events = SessionEventLog.get();
+
+    /**
+     * Answers browse requests that are not cached, normally the plugin forwarding them to JS.
+     */
+    public interface BrowseSource {
+        boolean hasBrowseHandler();
+
+        void browseCallback(String requestId, String parentId, int page, int pageSize);
+    }
 
     private MediaSessionPlugin plugin;
+    private BrowseSource browseSource;
+
+    private boolean pauseOnBecomingNoisy = false;
+    private boolean handleAudioFocus = false;
+    private boolean pauseWhenDucked = false;
+    private boolean becomingNoisyReceiverRegistered = false;
+    private AudioManager audioManager;
+    private AudioFocusRequestCompat audioFocusRequest;
+    private boolean resumeOnAudioFocusGain = false;
+
+    private final BroadcastReceiver becomingNoisyReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
+                long signalTime = SystemClock.elapsedRealtimeNanos();
+                runUpdate(() -> pauseFromInterruption("audio becoming noisy", signalTime));
+            }
+        }
+    };
+
+    private final AudioManager.OnAudioFocusChangeListener audioFocusChangeListener = (focusChange) -> {
+        long signalTime = SystemClock.elapsedRealtimeNanos();
+        runUpdate(() -> onAudioFocusChange(focusChange, signalTime));
+    };
+
+    private int memoryTier = MEMORY_TIER_FULL;
+    private final Runnable memoryRestoreCheck = this::checkMemoryRestore;
+
+    private final ArtworkPalette artworkPalette = new ArtworkPalette(this::onArtworkColorsExtracted);
+    private final MediaBrowseCache browseCache = new MediaBrowseCache(MediaBrowseCache.DEFAULT_MAX_PAGES);
+    private final Map<String, PendingBrowseRequest> pendingBrowseRequests = new HashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Session state is mutated on a single thread: the plugin thread once a plugin is connected,
+    // the caller's (main) thread before that.
+    private volatile Executor updateExecutor = Runnable::run;
+    private int nextBrowseRequestId = 0;
 
     private final IBinder binder = new LocalBinder();
 
+    private static final class PendingBrowseRequest {
+
+        final String parentId;
+        final int page;
+        final int pageSize;
+        final Result<List<MediaBrowserCompat.MediaItem>> result;
+
+        PendingBrowseRequest(String parentId, int page, int pageSize, Result<List<MediaBrowserCompat.MediaItem>> result) {
+            this.parentId = parentId;
+            this.page = page;
+            this.pageSize = pageSize;
+            this.result = result;
+        }
+    }
+
     public final class LocalBinder extends Binder {
 
         MediaSessionService getService() {
@@ -78,21 +208,58 @@ public class MediaSessionService extends Service {
         }
     }
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Browser clients such as Android Auto can bind before the plugin does, so the session
+        // and its token have to exist as soon as the service does.
+        mediaSession = new MediaSessionCompat(this, "CapgoMediaSession");
+        setSessionToken(mediaSession.getSessionToken());
+    }
+
+    @Override
+    public void onDestroy() {
+        failPendingBrowseRequests();
+        artworkPalette.shutdown();
+        mediaSession.release();
+        super.onDestroy();
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
+        boolean browser = SERVICE_INTERFACE.equals(intent.getAction());
+        events.record(SessionEventLog.SERVICE_BIND, browser ? "browser" : "plugin");
+        if (browser) {
+            return super.onBind(intent);
+        }
         return binder;
     }
 
+    @Override
+    public void onRebind(Intent intent) {
+        // Only the plugin binding asks for a rebind, when it returns while a browser kept us alive.
+        events.record(SessionEventLog.SERVICE_BIND, "plugin-rebind");
+        super.onRebind(intent);
+    }
+
     @Override
     public boolean onUnbind(Intent intent) {
+        boolean browser = SERVICE_INTERFACE.equals(intent.getAction());
+        events.record(SessionEventLog.SERVICE_UNBIND, browser ? "browser" : "plugin");
+        if (browser) {
+            return super.onUnbind(intent);
+        }
         destroy();
-        return super.onUnbind(intent);
+        // A browser client may keep the service alive, so ask for onRebind when the plugin returns.
+        return true;
     }
 
     public void connectAndInitialize(MediaSessionPlugin plugin, Intent intent) {
         this.plugin = plugin;
+        browseSource = plugin;
+        updateExecutor = plugin::runOnPluginThread;
 
-        mediaSession = new MediaSessionCompat(this, "CapgoMediaSession");
         mediaSession.setCallback(new MediaSessionCallback(plugin));
         mediaSession.setActive(true);
 
@@ -104,6 +271,14 @@ public class MediaSessionService extends Service {
         mediaMetadataBuilder = new MediaMetadataCompat.Builder().putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration);
         mediaSession.setMetadata(mediaMetadataBuilder.build());
 
+        // A browser client can keep this instance alive across a plugin unbind. The fields kept
+        // from that binding would not look changed, so republish all of them on the next update.
+        possibleActionsUpdate = true;
+        playbackStateUpdate = true;
+        mediaMetadataUpdate = true;
+        notificationUpdate = true;
+        queueUpdate = true;
+
         notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
         if (notificationManager == null) {
             Log.w(TAG, "Notification manager unavailable");
@@ -209,10 +384,400 @@ public class MediaSessionService extends Service {
     }
 
     public void destroy() {
+        mainHandler.removeCallbacks(memoryRestoreCheck);
+        runUpdate(() -> {
+            unregisterBecomingNoisyReceiver();
+            abandonAudioFocus();
+        });
+        plugin = null;
+        browseSource = null;
+        updateExecutor = Runnable::run;
+        failPendingBrowseRequests();
         stopForeground(true);
         stopSelf();
     }
 
+    @Nullable
+    @Override
+    public BrowserRoot onGetRoot(@NonNull String clientPackageName, int clientUid, @Nullable Bundle rootHints) {
+        if (!isAllowedBrowseClient(clientPackageName, clientUid)) {
+            Log.w(TAG, "Refusing browse connection from " + clientPackageName);
+            return null;
+        }
+
+        // System UI asks for the recent root to offer playback resumption, possibly after a
+        // reboot, so it is answered from the last persisted item rather than from JS. Play can
+        // only reach the app through a connected plugin, so without one the item is not offered.
+        if (rootHints != null && rootHints.getBoolean(BrowserRoot.EXTRA_RECENT)) {
+            if (plugin == null || loadRecentItem() == null) {
+                return null;
+            }
+            Bundle extras = new Bundle();
+            extras.putBoolean(BrowserRoot.EXTRA_RECENT, true);
+            return new BrowserRoot(BROWSE_RECENT_ROOT_ID, extras);
+        }
+        return new BrowserRoot(BROWSE_ROOT_ID, null);
+    }
+
+    private boolean isAllowedBrowseClient(String clientPackageName, int clientUid) {
+        return (
+            clientUid == Process.myUid() || clientUid == Process.SYSTEM_UID || ALLOWED_BROWSE_CLIENTS.contains(clientPackageName)
+        );
+    }
+
+    @Override
+    public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaBrowserCompat.MediaItem>> result) {
+        onLoadChildren(parentId, result, Bundle.EMPTY);
+    }
+
+    @Override
+    public void onLoadChildren(
+        @NonNull String parentId,
+        @NonNull Result<List<MediaBrowserCompat.MediaItem>> result,
+        @NonNull Bundle options
+    ) {
+        int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+        int pageSize = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+
+        if (BROWSE_RECENT_ROOT_ID.equals(parentId)) {
+            MediaBrowserCompat.MediaItem recentItem = loadRecentItem();
+            result.sendResult(recentItem != null ? Collections.singletonList(recentItem) : Collections.emptyList());
+            return;
+        }
+
+        List<MediaBrowserCompat.MediaItem> cachedChildren = browseCache.get(parentId, page, pageSize);
+        if (cachedChildren != null) {
+            result.sendResult(cachedChildren);
+            return;
+        }
+
+        BrowseSource source = browseSource;
+        if (source == null || !source.hasBrowseHandler()) {
+            result.sendResult(Collections.emptyList());
+            return;
+        }
+
+        result.detach();
+        String requestId;
+        synchronized (pendingBrowseRequests) {
+            requestId = String.valueOf(nextBrowseRequestId++);
+            pendingBrowseRequests.put(requestId, new PendingBrowseRequest(parentId, page, pageSize, result));
+        }
+        final String timeoutRequestId = requestId;
+        mainHandler.postDelayed(
+            () -> {
+                if (completeBrowseRequest(timeoutRequestId, null)) {
+                    Log.w(TAG, "Browse request for " + parentId + " timed out");
+                }
+            },
+            BROWSE_REQUEST_TIMEOUT_MS
+        );
+        source.browseCallback(requestId, parentId, page, pageSize);
+    }
+
+    void setBrowseSource(BrowseSource newBrowseSource) {
+        browseSource = newBrowseSource;
+    }
+
+    /**
+     * Completes a browse request issued through {@link BrowseSource#browseCallback}. A null
+     * {@code children} list fails the request without caching it.
+     *
+     * @return false when the request is unknown, already answered or timed out
+     */
+    public boolean completeBrowseRequest(String requestId, List<MediaBrowserCompat.MediaItem> children) {
+        PendingBrowseRequest request;
+        synchronized (pendingBrowseRequests) {
+            request = pendingBrowseRequests.remove(requestId);
+        }
+        if (request == null) {
+            return false;
+        }
+        if (children != null) {
+            browseCache.put(request.parentId, request.page, request.pageSize, children);
+        }
+        mainHandler.post(() -> request.result.sendResult(children != null ? children : Collections.emptyList()));
+        return true;
+    }
+
+    public void setMaxCachedBrowsePages(int maxPages) {
+        browseCache.setMaxPages(maxPages);
+    }
+
+    public void invalidateBrowseChildren(String parentId) {
+        browseCache.invalidate(parentId);
+        notifyChildrenChanged(parentId != null ? parentId : BROWSE_ROOT_ID);
+    }
+
+    private void runUpdate(Runnable runnable) {
+        updateExecutor.execute(runnable);
+    }
+
+    private void failPendingBrowseRequests() {
+        List<String> requestIds;
+        synchronized (pendingBrowseRequests) {
+            requestIds = new ArrayList<>(pendingBrowseRequests.keySet());
+        }
+        for (String requestId : requestIds) {
+            completeBrowseRequest(requestId, null);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        int tier;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) {
+            tier = MEMORY_TIER_PURGED;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            tier = MEMORY_TIER_URI_ONLY;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            tier = MEMORY_TIER_DOWNSCALED;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            // Backgrounding the UI is the normal state of a playing media app, not pressure.
+            return;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            tier = MEMORY_TIER_PURGED;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            tier = MEMORY_TIER_URI_ONLY;
+        } else {
+            tier = MEMORY_TIER_DOWNSCALED;
+        }
+
+        if (tier > memoryTier) {
+            setMemoryTier(tier);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        setMemoryTier(MEMORY_TIER_PURGED);
+    }
+
+    public int getMemoryTier() {
+        return memoryTier;
+    }
+
+    static String memoryTierName(int tier) {
+        return MEMORY_TIER_NAMES[tier];
+    }
+
+    private void setMemoryTier(int newMemoryTier) {
+        if (memoryTier == newMemoryTier) {
+            return;
+        }
+        Log.i(TAG, "Memory tier " + memoryTierName(memoryTier) + " -> " + memoryTierName(newMemoryTier));
+        memoryTier = newMemoryTier;
+
+        if (memoryTier >= MEMORY_TIER_PURGED) {
+            // The palette memo is a few dozen ints and saves re-decoding artwork for its colors
+            // once memory recovers, so it is kept.
+            browseCache.invalidate(null);
+        }
+
+        mainHandler.removeCallbacks(memoryRestoreCheck);
+        if (memoryTier != MEMORY_TIER_FULL) {
+            mainHandler.postDelayed(memoryRestoreCheck, MEMORY_RESTORE_CHECK_MS);
+        }
+
+        // The plugin owns the artwork and pushes the degraded or restored copy back here.
+        if (plugin != null) {
+            plugin.onMemoryTierChanged(memoryTier);
+        }
+    }
+
+    private void checkMemoryRestore() {
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return;
+        }
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        if (memoryInfo.lowMemory) {
+            mainHandler.postDelayed(memoryRestoreCheck, MEMORY_RESTORE_CHECK_MS);
+        } else {
+            // Step back up one tier at a time so a brief lull does not reload everything at once.
+            setMemoryTier(memoryTier - 1);
+        }
+    }
+
+    void collectArtwork(Set<Bitmap> heldArtwork) {
+        if (artwork != null) {
+            heldArtwork.add(artwork);
+        }
+    }
+
+    public void setAudioInterruptionHandling(
+        boolean newPauseOnBecomingNoisy,
+        boolean newHandleAudioFocus,
+        boolean newPauseWhenDucked
+    ) {
+        pauseOnBecomingNoisy = newPauseOnBecomingNoisy;
+        handleAudioFocus = newHandleAudioFocus;
+        pauseWhenDucked = newPauseWhenDucked;
+        if (audioManager == null) {
+            audioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
+        }
+        // The ducking preference is part of the request, so a new one is built on the next play.
+        abandonAudioFocus();
+        updateAudioInterruptionHandling();
+    }
+
+    private void updateAudioInterruptionHandling() {
+        boolean playing = playbackState == PlaybackStateCompat.STATE_PLAYING;
+
+        if (pauseOnBecomingNoisy && playing) {
+            registerBecomingNoisyReceiver();
+        } else {
+            unregisterBecomingNoisyReceiver();
+        }
+
+        // Focus is kept while paused so a transient loss can still be followed by a gain.
+        if (handleAudioFocus && playing) {
+            requestAudioFocus();
+        } else if (!handleAudioFocus || playbackState == PlaybackStateCompat.STATE_NONE) {
+            abandonAudioFocus();
+        }
+    }
+
+    private void registerBecomingNoisyReceiver() {
+        if (!becomingNoisyReceiverRegistered) {
+            ContextCompat.registerReceiver(
+                this,
+                becomingNoisyReceiver,
+                new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY),
+                ContextCompat.RECEIVER_NOT_EXPORTED
+            );
+            becomingNoisyReceiverRegistered = true;
+        }
+    }
+
+    private void unregisterBecomingNoisyReceiver() {
+        if (becomingNoisyReceiverRegistered) {
+            unregisterReceiver(becomingNoisyReceiver);
+            becomingNoisyReceiverRegistered = false;
+        }
+    }
+
+    private void requestAudioFocus() {
+        if (audioManager == null || audioFocusRequest != null) {
+            return;
+        }
+        AudioFocusRequestCompat request = new AudioFocusRequestCompat.Builder(AudioManagerCompat.AUDIOFOCUS_GAIN)
+            .setAudioAttributes(
+                new AudioAttributesCompat.Builder()
+                    .setUsage(AudioAttributesCompat.USAGE_MEDIA)
+                    .setContentType(AudioAttributesCompat.CONTENT_TYPE_MUSIC)
+                    .build()
+            )
+            .setWillPauseWhenDucked(pauseWhenDucked)
+            .setOnAudioFocusChangeListener(audioFocusChangeListener, mainHandler)
+            .build();
+        if (AudioManagerCompat.requestAudioFocus(audioManager, request) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            audioFocusRequest = request;
+        } else {
+            Log.w(TAG, "Audio focus request was not granted");
+        }
+    }
+
+    private void abandonAudioFocus() {
+        if (audioManager != null && audioFocusRequest != null) {
+            AudioManagerCompat.abandonAudioFocusRequest(audioManager, audioFocusRequest);
+        }
+        audioFocusRequest = null;
+        resumeOnAudioFocusGain = false;
+    }
+
+    private void onAudioFocusChange(int focusChange, long signalTime) {
+        switch (focusChange) {
+            case AudioManager.AUDIOFOCUS_LOSS:
+                // A permanent loss never comes back with a gain, so drop the request and ask for
+                // focus again on the next play.
+                pauseFromInterruption("audio focus loss", signalTime);
+                abandonAudioFocus();
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                if (!pauseWhenDucked) {
+                    // Before API 26 the system does not duck on its own and CAN_DUCK is always
+                    // delivered; the WebView's volume is out of reach, so keep playing.
+                    Log.d(TAG, "Ignoring audio focus loss that allows ducking");
+                    break;
+                }
+                if (playbackState == PlaybackStateCompat.STATE_PLAYING) {
+                    resumeOnAudioFocusGain = pauseFromInterruption("ducking audio focus loss", signalTime);
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+                if (playbackState == PlaybackStateCompat.STATE_PLAYING) {
+                    resumeOnAudioFocusGain = pauseFromInterruption("transient audio focus loss", signalTime);
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_GAIN:
+                if (resumeOnAudioFocusGain) {
+                    resumeOnAudioFocusGain = false;
+                    resumeFromInterruption(signalTime);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Pauses the native session right away and dispatches "pause" to the JS handler, instead of
+     * waiting for the WebView to notice the interruption on its own.
+     *
+     * @param signalTime when the system signal arrived, so the logged latency includes the hop
+     *     to the plugin thread
+     * @return whether the session was playing and has been paused
+     */
+    private boolean pauseFromInterruption(String reason, long signalTime) {
+        if (playbackState != PlaybackStateCompat.STATE_PLAYING || plugin == null || !plugin.hasActionHandler("pause")) {
+            Log.d(TAG, "Ignoring " + reason + ", nothing to pause");
+            return false;
+        }
+
+        setPlaybackState(PlaybackStateCompat.STATE_PAUSED);
+        update();
+        plugin.actionCallback("pause");
+        double dispatchMs = (SystemClock.elapsedRealtimeNanos() - signalTime) / 1000000.0;
+        Log.d(TAG, "Paused on " + reason + ", dispatched in " + dispatchMs + " ms");
+        return true;
+    }
+
+    private void resumeFromInterruption(long signalTime) {
+        if (playbackState != PlaybackStateCompat.STATE_PAUSED || plugin == null || !plugin.hasActionHandler("play")) {
+            return;
+        }
+
+        setPlaybackState(PlaybackStateCompat.STATE_PLAYING);
+        update();
+        plugin.actionCallback("play");
+        double dispatchMs = (SystemClock.elapsedRealtimeNanos() - signalTime) / 1000000.0;
+        Log.d(TAG, "Resumed on audio focus gain, dispatched in " + dispatchMs + " ms");
+    }
+
+    /**
+     * Moves the time played since the last stamp into {@link #position}. Live reports close to the
+     * extrapolated position are dropped, so without this a republished state would jump back to
+     * the last accepted report.
+     */
+    private void foldPosition() {
+        position = getExtrapolatedPosition();
+        positionUpdateTime = SystemClock.elapsedRealtime();
+    }
+
+    private long getExtrapolatedPosition() {
+        if (playbackState != PlaybackStateCompat.STATE_PLAYING) {
+            return position;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - positionUpdateTime;
+        long extrapolated = position + (long) (elapsed * playbackSpeed);
+        return duration > 0 && !live ? Math.min(extrapolated, duration) : extrapolated;
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (mediaSession != null) {
@@ -223,9 +788,11 @@ public class MediaSessionService extends Service {
 
     public void setPlaybackState(int newPlaybackState) {
         if (playbackState != newPlaybackState) {
+            foldPosition();
             playbackState = newPlaybackState;
             playbackStateUpdate = true;
             possibleActionsUpdate = true;
+            updateAudioInterruptionHandling();
         }
     }
 
@@ -253,36 +820,155 @@ public class MediaSessionService extends Service {
         }
     }
 
-    public void setArtwork(Bitmap newArtwork) {
-        artwork = newArtwork;
-        mediaMetadataUpdate = true;
-        notificationUpdate = true;
+    public void setArtwork(Bitmap newArtwork, String newArtworkKey) {
+        if (artwork != newArtwork) {
+            artwork = newArtwork;
+            artworkKey = newArtwork != null ? newArtworkKey : null;
+            artworkColors = artworkPalette.get(artworkKey);
+            if (artworkColors == null) {
+                artworkPalette.extract(artworkKey, artwork);
+            }
+            mediaMetadataUpdate = true;
+            notificationUpdate = true;
+        }
+    }
+
+    /**
+     * Remote URI of the artwork, published next to the bitmap so clients can still show the cover
+     * once memory pressure drops the bitmap.
+     */
+    public void setArtworkUri(String newArtworkUri) {
+        boolean remote = newArtworkUri != null && (newArtworkUri.startsWith("http") || newArtworkUri.startsWith("content:"));
+        String remoteUri = remote ? newArtworkUri : null;
+        if (!Objects.equals(artworkUri, remoteUri)) {
+            artworkUri = remoteUri;
+            mediaMetadataUpdate = true;
+        }
+    }
+
+    private void onArtworkColorsExtracted(String extractedArtworkKey, ArtworkPalette.Colors colors) {
+        runUpdate(() -> {
+            if (extractedArtworkKey.equals(artworkKey)) {
+                artworkColors = colors;
+                notificationUpdate = true;
+                update();
+            }
+        });
     }
 
     public void setDuration(long newDuration) {
         if (duration != newDuration) {
+            if (live) {
+                // The seek window is not part of the metadata, only whether one exists matters.
+                possibleActionsUpdate = possibleActionsUpdate || (duration > 0) != (newDuration > 0);
+                duration = newDuration;
+                return;
+            }
             duration = newDuration;
             mediaMetadataUpdate = true;
             notificationUpdate = true;
         }
     }
 
+    /**
+     * In live mode the duration is left out of the metadata, seeking is only offered while the
+     * player reports a seekable window, and position reports that match the extrapolated position
+     * are dropped.
+     */
+    public void setLive(boolean newLive) {
+        if (live != newLive) {
+            live = newLive;
+            mediaMetadataUpdate = true;
+            notificationUpdate = true;
+            possibleActionsUpdate = true;
+        }
+    }
+
     public void setPosition(long newPosition) {
+        if (
+            live &&
+            playbackState == PlaybackStateCompat.STATE_PLAYING &&
+            Math.abs(newPosition - getExtrapolatedPosition()) < LIVE_POSITION_TOLERANCE_MS
+        ) {
+            return;
+        }
         if (position != newPosition) {
             position = newPosition;
+            positionUpdateTime = SystemClock.elapsedRealtime();
             playbackStateUpdate = true;
         }
     }
 
     public void setPlaybackSpeed(float newPlaybackSpeed) {
         if (playbackSpeed != newPlaybackSpeed) {
+            foldPosition();
             playbackSpeed = newPlaybackSpeed;
             playbackStateUpdate = true;
         }
     }
 
+    public void setQueue(List<MediaSessionCompat.QueueItem> newQueue) {
+        queue = newQueue != null ? newQueue : Collections.emptyList();
+        queueUpdate = true;
+    }
+
+    public void setActiveQueueItemId(long newActiveQueueItemId) {
+        if (activeQueueItemId != newActiveQueueItemId) {
+            activeQueueItemId = newActiveQueueItemId;
+            playbackStateUpdate = true;
+        }
+    }
+
     @SuppressLint("RestrictedApi")
+    private void saveRecentItem() {
+        if (title.isEmpty()) {
+            return;
+        }
+        String mediaId = BROWSE_RECENT_ROOT_ID;
+        for (MediaSessionCompat.QueueItem item : queue) {
+            if (item.getQueueId() == activeQueueItemId && item.getDescription().getMediaId() != null) {
+                mediaId = item.getDescription().getMediaId();
+                break;
+            }
+        }
+        getSharedPreferences(RECENT_ITEM_PREFERENCES, MODE_PRIVATE)
+            .edit()
+            .putString("mediaId", mediaId)
+            .putString("title", title)
+            .putString("artist", artist)
+            .putString("album", album)
+            .putString("artworkUri", artworkUri)
+            .apply();
+    }
+
+    private MediaBrowserCompat.MediaItem loadRecentItem() {
+        SharedPreferences preferences = getSharedPreferences(RECENT_ITEM_PREFERENCES, MODE_PRIVATE);
+        String mediaId = preferences.getString("mediaId", null);
+        if (mediaId == null) {
+            return null;
+        }
+        String recentArtworkUri = preferences.getString("artworkUri", null);
+        MediaDescriptionCompat description = new MediaDescriptionCompat.Builder()
+            .setMediaId(mediaId)
+            .setTitle(preferences.getString("title", ""))
+            .setSubtitle(preferences.getString("artist", ""))
+            .setDescription(preferences.getString("album", ""))
+            .setIconUri(recentArtworkUri != null ? Uri.parse(recentArtworkUri) : null)
+            .build();
+        return new MediaBrowserCompat.MediaItem(description, MediaBrowserCompat.MediaItem.FLAG_PLAYABLE);
+    }
+
     public void update() {
+        int dirtyFlags =
+            (possibleActionsUpdate ? DIRTY_POSSIBLE_ACTIONS : 0) |
+            (playbackStateUpdate ? DIRTY_PLAYBACK_STATE : 0) |
+            (mediaMetadataUpdate ? DIRTY_MEDIA_METADATA : 0) |
+            (notificationUpdate ? DIRTY_NOTIFICATION : 0) |
+            (queueUpdate ? DIRTY_QUEUE : 0);
+        if (dirtyFlags != 0) {
+            events.record(SessionEventLog.DIRTY_FLAGS, null, dirtyFlags);
+        }
+
         if (possibleActionsUpdate) {
             if (notificationBuilder != null) {
                 notificationBuilder.mActions.clear();
@@ -301,6 +987,9 @@ public class MediaSessionService extends Service {
                     if ("pause".equals(actionName) && playbackState != PlaybackStateCompat.STATE_PLAYING) {
                         continue;
                     }
+                    if (live && duration <= 0 && isSeekAction(actionName)) {
+                        continue;
+                    }
 
                     if (playbackStateActions.containsKey(actionName)) {
                         activePlaybackStateActions = activePlaybackStateActions | playbackStateActions.get(actionName);
@@ -335,8 +1024,16 @@ public class MediaSessionService extends Service {
             notificationUpdate = true;
         }
 
+        if (queueUpdate && mediaSession != null) {
+            mediaSession.setQueue(queue.isEmpty() ? null : queue);
+            queueUpdate = false;
+        }
+
         if (playbackStateUpdate && playbackStateBuilder != null) {
-            playbackStateBuilder.setState(playbackState, position, playbackSpeed);
+            foldPosition();
+            playbackStateBuilder
+                .setState(playbackState, position, playbackSpeed, positionUpdateTime)
+                .setActiveQueueItemId(activeQueueItemId);
             mediaSession.setPlaybackState(playbackStateBuilder.build());
             playbackStateUpdate = false;
         }
@@ -347,18 +1044,43 @@ public class MediaSessionService extends Service {
                 .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, artist)
                 .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, album)
                 .putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, artwork)
-                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, duration);
+                .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI, artworkUri)
+                .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, live ? 0 : duration);
             mediaSession.setMetadata(mediaMetadataBuilder.build());
+            saveRecentItem();
             mediaMetadataUpdate = false;
         }
 
         if (notificationUpdate && notificationBuilder != null && notificationManager != null) {
             notificationBuilder.setContentTitle(title).setContentText(artist + " - " + album).setLargeIcon(artwork);
+            if (artworkColors != null && artworkColors.vibrant != 0) {
+                notificationBuilder.setColor(artworkColors.vibrant).setColorized(true);
+            } else {
+                notificationBuilder.setColor(NotificationCompat.COLOR_DEFAULT).setColorized(false);
+            }
             notificationManager.notify(NOTIFICATION_ID, notificationBuilder.build());
+            events.record(SessionEventLog.NOTIFICATION_POSTED, title);
             notificationUpdate = false;
         }
     }
 
+    private static boolean isSeekAction(String actionName) {
+        return "seekto".equals(actionName) || "seekforward".equals(actionName) || "seekbackward".equals(actionName);
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        writer.println(
+            "Playback state: " + playbackState + ", position " + position + "ms of " + duration + "ms" + (live ? " (live)" : "")
+        );
+        writer.println("Title: " + title + ", artist: " + artist + ", album: " + album);
+        String artworkSize = artwork != null ? artwork.getWidth() + "x" + artwork.getHeight() : "none";
+        writer.println("Artwork: " + artworkSize + ", uri " + artworkUri);
+        writer.println("Memory tier: " + memoryTierName(memoryTier) + ", plugin connected: " + (plugin != null));
+        events.dump(writer);
+    }
+
     public void updatePossibleActions() {
         possibleActionsUpdate = true;
         update();
@@ -0,0 +1,112 @@
+package com.capgo.mediasession;
+
+import android.os.SystemClock;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.io.PrintWriter;
+
+/**
+ * Fixed-size ring buffer of session events for diagnostics. Recording only writes into
+ * preallocated arrays, so it is cheap enough to leave on in production; details must be
+ * constants or strings that already exist, never built per event.
+ */
+final class SessionEventLog {
+
+    static final int BRIDGE_CALL = 0;
+    static final int DIRTY_FLAGS = 1;
+    static final int NOTIFICATION_POSTED = 2;
+    static final int ACTION_CALLBACK = 3;
+    static final int SERVICE_BIND = 4;
+    static final int SERVICE_UNBIND = 5;
+    private static final String[] TYPE_NAMES = {
+        "bridge-call",
+        "dirty-flags",
+        "notification-posted",
+        "action-callback",
+        "service-bind",
+        "service-unbind"
+    };
+
+    private static final int CAPACITY = 256;
+
+    private static final SessionEventLog INSTANCE = new SessionEventLog(CAPACITY);
+
+    private final long[] timestamps;
+    private final int[] types;
+    private final String[] details;
+    private final long[] values;
+    private int next = 0;
+    private long recorded = 0;
+
+    SessionEventLog(int capacity) {
+        timestamps = new long[capacity];
+        types = new int[capacity];
+        details = new String[capacity];
+        values = new long[capacity];
+    }
+
+    /**
+     * Shared by the plugin and the service, which can each outlive the other.
+     */
+    static SessionEventLog get() {
+        return INSTANCE;
+    }
+
+    void record(int type, String detail) {
+        record(type, detail, 0);
+    }
+
+    synchronized void record(int type, String detail, long value) {
+        timestamps[next] = SystemClock.elapsedRealtimeNanos();
+        types[next] = type;
+        details[next] = detail;
+        values[next] = value;
+        next = (next + 1) % timestamps.length;
+        recorded++;
+    }
+
+    synchronized JSObject toJSObject() {
+        JSArray events = new JSArray();
+        int count = (int) Math.min(recorded, timestamps.length);
+        int first = (next - count + timestamps.length) % timestamps.length;
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % timestamps.length;
+            JSObject event = new JSObject();
+            event.put("time", timestamps[index] / 1000000.0);
+            event.put("type", TYPE_NAMES[types[index]]);
+            event.put("detail", details[index]);
+            event.put("value", values[index]);
+            events.put(event);
+        }
+
+        JSObject ret = new JSObject();
+        ret.put("events", events);
+        ret.put("dropped", recorded - count);
+        return ret;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        int count = (int) Math.min(recorded, timestamps.length);
+        int first = (next - count + timestamps.length) % timestamps.length;
+        writer.println("Session events (" + count + " of " + recorded + ", oldest first):");
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % timestamps.length;
+            writer.print("  ");
+            writer.print(timestamps[index] / 1000000.0);
+            writer.print("ms ");
+            writer.print(TYPE_NAMES[types[index]]);
+            if (details[index] != null) {
+                writer.print(" ");
+                writer.print(details[index]);
+            }
+            if (types[index] == DIRTY_FLAGS) {
+                writer.print(" flags=0x");
+                writer.print(Long.toHexString(values[index]));
+            } else if (values[index] != 0) {
+                writer.print(" ");
+                writer.print(values[index]);
+            }
+            writer.println();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ArtworkPaletteTest {
+
+    /**
+     * Holds extractions until the test runs them, so it can act while one is in flight.
+     */
+    private static final class QueuedExecutorService extends AbstractExecutorService {
+
+        private final List<Runnable> queued = new ArrayList<>();
+        private boolean shutdown = false;
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        void runQueued() {
+            List<Runnable> commands = new ArrayList<>(queued);
+            queued.clear();
+            for (Runnable command : commands) {
+                command.run();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private final List<String> extracted = new ArrayList<>();
+    private QueuedExecutorService executor;
+    private ArtworkPalette palette;
+    private Bitmap artwork;
+
+    @Before
+    public void setUp() {
+        executor = new QueuedExecutorService();
+        palette = new ArtworkPalette((key, colors) -> extracted.add(key), executor);
+        artwork = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+    }
+
+    @Test
+    public void pendingCoverIsExtractedOnce() {
+        palette.extract("cover", artwork);
+        palette.extract("cover", artwork);
+        assertEquals(1, executor.queued.size());
+
+        executor.runQueued();
+
+        assertEquals(List.of("cover"), extracted);
+        assertNotNull(palette.get("cover"));
+    }
+
+    @Test
+    public void extractedCoverIsServedFromMemo() {
+        palette.extract("cover", artwork);
+        executor.runQueued();
+
+        palette.extract("cover", artwork);
+
+        assertTrue(executor.queued.isEmpty());
+        assertEquals(List.of("cover"), extracted);
+    }
+
+    @Test
+    public void differentCoversAreExtractedSeparately() {
+        palette.extract("first", artwork);
+        palette.extract("second", artwork);
+        executor.runQueued();
+
+        assertEquals(List.of("first", "second"), extracted);
+        assertNull(palette.get("third"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaQueueTest {
+
+    private static final int ARTWORK_SIZE = 100;
+    private static final int ARTWORK_BYTES = ARTWORK_SIZE * ARTWORK_SIZE * 4;
+
+    private final List<String> loaded = new ArrayList<>();
+    private final List<String> prepared = new ArrayList<>();
+    private int artworkSize = ARTWORK_SIZE;
+    private MediaQueue queue;
+    private List<MediaQueueItem> items;
+
+    @Before
+    public void setUp() {
+        queue = new MediaQueue(
+            (item) -> prepared.add(item.getId()),
+            (src) -> {
+                loaded.add(src);
+                return Bitmap.createBitmap(artworkSize, artworkSize, Bitmap.Config.ARGB_8888);
+            },
+            new DirectExecutorService()
+        );
+        items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new MediaQueueItem("item-" + i, "Title " + i, "Artist", "Album", "https://example.com/" + i + ".png"));
+        }
+    }
+
+    @Test
+    public void prefetchesActiveItemAndWindow() {
+        queue.setPrefetchCount(2);
+        queue.setItems(items, 0);
+
+        assertEquals(List.of("item-0", "item-1", "item-2"), prepared);
+        assertTrue(items.get(2).isPrepared());
+        assertFalse(items.get(3).isPrepared());
+        assertNull(items.get(3).getArtwork());
+    }
+
+    @Test
+    public void skipMovesWindowAndDropsPassedArtwork() {
+        queue.setPrefetchCount(2);
+        queue.setItems(items, 0);
+
+        MediaQueueItem next = queue.skip(1);
+
+        assertSame(items.get(1), next);
+        assertEquals(1, queue.getActiveIndex());
+        assertNull(items.get(0).getArtwork());
+        assertTrue(items.get(3).isPrepared());
+        // Items still in the window keep their artwork instead of being loaded again.
+        assertEquals(4, loaded.size());
+    }
+
+    @Test
+    public void skipStopsAtQueueBounds() {
+        queue.setItems(items, 0);
+        assertNull(queue.skip(-1));
+        assertEquals(0, queue.getActiveIndex());
+
+        assertSame(items.get(4), queue.skip(4));
+        assertNull(queue.skip(1));
+        assertEquals(4, queue.getActiveIndex());
+    }
+
+    @Test
+    public void skipOnEmptyQueueReturnsNull() {
+        assertNull(queue.skip(1));
+        assertNull(queue.getActiveItem());
+    }
+
+    @Test
+    public void prefetchStaysWithinMemoryBudget() {
+        queue.setPrefetchCount(4);
+        queue.setPrefetchMemoryBudget(ARTWORK_BYTES * 2 + ARTWORK_BYTES / 2);
+        queue.setItems(items, 0);
+
+        assertEquals(List.of("item-0", "item-1"), prepared);
+        assertFalse(items.get(2).isPrepared());
+    }
+
+    @Test
+    public void disablingPrefetchDropsArtwork() {
+        queue.setItems(items, 0);
+        queue.setPrefetchEnabled(false);
+
+        for (MediaQueueItem item : items) {
+            assertNull(item.getArtwork());
+        }
+
+        queue.setPrefetchEnabled(true);
+        assertTrue(items.get(0).isPrepared());
+    }
+
+    @Test
+    public void setActiveItemMovesWindow() {
+        queue.setPrefetchCount(1);
+        queue.setItems(items, 0);
+
+        assertSame(items.get(3), queue.setActiveItem("item-3"));
+        assertEquals(3, queue.getActiveIndex());
+        assertNull(items.get(0).getArtwork());
+        assertTrue(items.get(4).isPrepared());
+
+        assertNull(queue.setActiveItem("missing"));
+        assertEquals(3, queue.getActiveIndex());
+    }
+
+    @Test
+    public void artworkMaxSizeDownscalesPrefetchedArtwork() {
+        artworkSize = 512;
+        queue.setItems(items, 0);
+        assertEquals(512, items.get(1).getArtwork().getWidth());
+
+        queue.setArtworkMaxSize(256);
+        assertEquals(256, items.get(1).getArtwork().getWidth());
+
+        queue.skip(1);
+        assertEquals(256, items.get(3).getArtwork().getWidth());
+    }
+}
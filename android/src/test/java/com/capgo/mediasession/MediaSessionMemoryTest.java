@@ -0,0 +1,123 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.content.Intent;
+import android.os.Looper;
+import androidx.test.core.app.ApplicationProvider;
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaSessionMemoryTest {
+
+    private static final String COVER = "https://example.com/cover.png";
+    private static final long FULL_BYTES = (long) TestMediaSessionPlugin.ARTWORK_SIZE * TestMediaSessionPlugin.ARTWORK_SIZE * 4;
+    private static final long DOWNSCALED_BYTES = 256L * 256 * 4;
+
+    private ServiceController<MediaSessionService> controller;
+    private MediaSessionService service;
+    private TestMediaSessionPlugin plugin;
+
+    @Before
+    public void setUp() {
+        Application application = ApplicationProvider.getApplicationContext();
+        controller = Robolectric.buildService(MediaSessionService.class).create();
+        service = controller.get();
+        Intent intent = new Intent(application, MediaSessionService.class);
+        service.onBind(intent);
+        plugin = new TestMediaSessionPlugin();
+        service.connectAndInitialize(plugin, intent);
+        plugin.attachService(service);
+
+        JSObject metadata = new JSObject();
+        metadata.put("title", "Song");
+        JSObject cover = new JSObject();
+        cover.put("src", COVER);
+        JSArray artwork = new JSArray();
+        artwork.put(cover);
+        metadata.put("artwork", artwork);
+        TestPluginCall call = new TestPluginCall("setMetadata", metadata);
+        plugin.setMetadata(call);
+        assertNotNull(call.result);
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void trimLevelsMapToTiers() {
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertTier(MediaSessionService.MEMORY_TIER_FULL, "full");
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertTier(MediaSessionService.MEMORY_TIER_DOWNSCALED, "downscaled");
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertTier(MediaSessionService.MEMORY_TIER_URI_ONLY, "uri-only");
+
+        // A milder signal does not undo a harsher one, only the restore check steps back up.
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertTier(MediaSessionService.MEMORY_TIER_URI_ONLY, "uri-only");
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertTier(MediaSessionService.MEMORY_TIER_PURGED, "purged");
+    }
+
+    @Test
+    public void degradedTiersShrinkHeldArtwork() {
+        assertEquals(FULL_BYTES, memoryState().optLong("artworkBytes"));
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        assertEquals(DOWNSCALED_BYTES, memoryState().optLong("artworkBytes"));
+
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(0, memoryState().optLong("artworkBytes"));
+        assertEquals(1, plugin.loadedArtwork.size());
+    }
+
+    @Test
+    public void restoreStepsUpOneTierAndReloadsArtwork() {
+        service.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(0, memoryState().optLong("artworkBytes"));
+
+        advance(Duration.ofSeconds(60));
+        assertTier(MediaSessionService.MEMORY_TIER_DOWNSCALED, "downscaled");
+        assertEquals(DOWNSCALED_BYTES, memoryState().optLong("artworkBytes"));
+
+        advance(Duration.ofSeconds(60));
+        assertTier(MediaSessionService.MEMORY_TIER_FULL, "full");
+        assertEquals(FULL_BYTES, memoryState().optLong("artworkBytes"));
+        assertEquals(3, plugin.loadedArtwork.size());
+    }
+
+    private void assertTier(int tier, String name) {
+        assertEquals(tier, service.getMemoryTier());
+        assertEquals(name, memoryState().getString("tier"));
+    }
+
+    private JSObject memoryState() {
+        TestPluginCall call = new TestPluginCall("getMemoryState", new JSObject());
+        plugin.getMemoryState(call);
+        return call.result;
+    }
+
+    private static void advance(Duration duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration);
+    }
+}
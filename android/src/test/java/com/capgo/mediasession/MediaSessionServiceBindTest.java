@@ -0,0 +1,116 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Process;
+import android.support.v4.media.session.PlaybackStateCompat;
+import androidx.media.MediaBrowserServiceCompat;
+import androidx.test.core.app.ApplicationProvider;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaSessionServiceBindTest {
+
+    private Application application;
+    private ServiceController<MediaSessionService> controller;
+    private MediaSessionService service;
+    private Intent pluginIntent;
+
+    @Before
+    public void setUp() {
+        application = ApplicationProvider.getApplicationContext();
+        controller = Robolectric.buildService(MediaSessionService.class).create();
+        service = controller.get();
+        pluginIntent = new Intent(application, MediaSessionService.class);
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void rebindRepublishesRetainedState() throws JSONException {
+        service.onBind(pluginIntent);
+        connectPlugin();
+        publish("Song");
+        assertEquals("Song", notificationTitle());
+
+        // A browser client keeps the instance alive, so the plugin comes back through onRebind.
+        assertTrue(service.onUnbind(pluginIntent));
+        service.onRebind(pluginIntent);
+        connectPlugin();
+
+        // The plugin pushes the same values it pushed before the unbind.
+        publish("Song");
+        long flags = lastDirtyFlags();
+        assertNotEquals(0, flags & MediaSessionService.DIRTY_MEDIA_METADATA);
+        assertNotEquals(0, flags & MediaSessionService.DIRTY_NOTIFICATION);
+        assertEquals("Song", notificationTitle());
+    }
+
+    @Test
+    public void recentRootNeedsConnectedPlugin() {
+        service.onBind(pluginIntent);
+        connectPlugin();
+        publish("Song");
+        assertEquals(MediaSessionService.BROWSE_RECENT_ROOT_ID, recentRoot().getRootId());
+
+        // The persisted item is still there, but nothing would handle play.
+        service.onUnbind(pluginIntent);
+        assertNull(recentRoot());
+    }
+
+    private void connectPlugin() {
+        service.connectAndInitialize(new TestMediaSessionPlugin(), pluginIntent);
+    }
+
+    private void publish(String title) {
+        service.setTitle(title);
+        service.setArtist("Artist");
+        service.setAlbum("Album");
+        service.setPlaybackState(PlaybackStateCompat.STATE_PLAYING);
+        service.update();
+    }
+
+    private MediaBrowserServiceCompat.BrowserRoot recentRoot() {
+        Bundle hints = new Bundle();
+        hints.putBoolean(MediaBrowserServiceCompat.BrowserRoot.EXTRA_RECENT, true);
+        return service.onGetRoot("com.android.systemui", Process.SYSTEM_UID, hints);
+    }
+
+    private String notificationTitle() {
+        NotificationManager notificationManager = (NotificationManager) application.getSystemService(Context.NOTIFICATION_SERVICE);
+        Notification notification = shadowOf(notificationManager).getNotification(MediaSessionService.NOTIFICATION_ID);
+        return notification != null ? String.valueOf(notification.extras.getCharSequence(Notification.EXTRA_TITLE)) : null;
+    }
+
+    private static long lastDirtyFlags() throws JSONException {
+        JSONArray events = SessionEventLog.get().toJSObject().getJSONArray("events");
+        for (int i = events.length() - 1; i >= 0; i--) {
+            JSONObject event = events.getJSONObject(i);
+            if ("dirty-flags".equals(event.getString("type"))) {
+                return event.getLong("value");
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,187 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaDescriptionCompat;
+import androidx.annotation.NonNull;
+import androidx.media.MediaBrowserServiceCompat;
+import androidx.test.core.app.ApplicationProvider;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaSessionServiceBrowseTest {
+
+    private static final class FakeBrowseSource implements MediaSessionService.BrowseSource {
+
+        final List<String> requestIds = new ArrayList<>();
+        final List<String> requests = new ArrayList<>();
+
+        @Override
+        public boolean hasBrowseHandler() {
+            return true;
+        }
+
+        @Override
+        public void browseCallback(String requestId, String parentId, int page, int pageSize) {
+            requestIds.add(requestId);
+            requests.add(parentId + "@" + page + "/" + pageSize);
+        }
+    }
+
+    private Application application;
+    private ComponentName componentName;
+    private ServiceController<MediaSessionService> controller;
+    private MediaSessionService service;
+    private FakeBrowseSource browseSource;
+    private final List<MediaBrowserCompat> browsers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        application = ApplicationProvider.getApplicationContext();
+        componentName = new ComponentName(application, MediaSessionService.class);
+        shadowOf(application.getPackageManager()).setPackagesForUid(Process.myUid(), application.getPackageName());
+
+        controller = Robolectric.buildService(MediaSessionService.class).create();
+        service = controller.get();
+        browseSource = new FakeBrowseSource();
+        service.setBrowseSource(browseSource);
+
+        Intent intent = new Intent(MediaBrowserServiceCompat.SERVICE_INTERFACE).setComponent(componentName);
+        shadowOf(application).setComponentNameAndServiceForBindServiceForIntent(intent, componentName, service.onBind(intent));
+    }
+
+    @After
+    public void tearDown() {
+        for (MediaBrowserCompat browser : browsers) {
+            browser.disconnect();
+        }
+        controller.destroy();
+    }
+
+    @Test
+    public void cachedPageIsServedWithoutBridgeCall() {
+        AtomicReference<List<MediaBrowserCompat.MediaItem>> first = subscribe(connect(), "albums", 0, 20);
+        assertEquals(Collections.singletonList("albums@0/20"), browseSource.requests);
+        assertNull(first.get());
+
+        assertTrue(service.completeBrowseRequest(browseSource.requestIds.get(0), items("album-1", "album-2")));
+        idleMainLooper();
+        assertEquals(2, first.get().size());
+
+        AtomicReference<List<MediaBrowserCompat.MediaItem>> second = subscribe(connect(), "albums", 0, 20);
+        assertEquals(1, browseSource.requests.size());
+        assertEquals("album-1", second.get().get(0).getMediaId());
+    }
+
+    @Test
+    public void otherPageIsRequested() {
+        subscribe(connect(), "albums", 0, 20);
+        service.completeBrowseRequest(browseSource.requestIds.get(0), items("album-1"));
+        idleMainLooper();
+
+        subscribe(connect(), "albums", 1, 20);
+        assertEquals(2, browseSource.requests.size());
+        assertEquals("albums@1/20", browseSource.requests.get(1));
+    }
+
+    @Test
+    public void invalidatedParentIsRequestedAgain() {
+        subscribe(connect(), "albums", 0, 20);
+        service.completeBrowseRequest(browseSource.requestIds.get(0), items("album-1"));
+        idleMainLooper();
+
+        service.invalidateBrowseChildren("albums");
+        idleMainLooper();
+        // The subscribed browser reloads the invalidated parent, which now misses the cache.
+        assertEquals(2, browseSource.requests.size());
+        assertEquals("albums@0/20", browseSource.requests.get(1));
+    }
+
+    @Test
+    public void timedOutRequestIsNotCached() {
+        AtomicReference<List<MediaBrowserCompat.MediaItem>> timedOut = subscribe(connect(), "albums", 0, 20);
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(10));
+        assertTrue(timedOut.get().isEmpty());
+        assertFalse(service.completeBrowseRequest(browseSource.requestIds.get(0), items("album-1")));
+
+        subscribe(connect(), "albums", 0, 20);
+        assertEquals(2, browseSource.requests.size());
+    }
+
+    private MediaBrowserCompat connect() {
+        MediaBrowserCompat browser = new MediaBrowserCompat(
+            application,
+            componentName,
+            new MediaBrowserCompat.ConnectionCallback(),
+            null
+        );
+        browsers.add(browser);
+        browser.connect();
+        idleMainLooper();
+        assertTrue(browser.isConnected());
+        return browser;
+    }
+
+    private AtomicReference<List<MediaBrowserCompat.MediaItem>> subscribe(
+        MediaBrowserCompat browser,
+        String parentId,
+        int page,
+        int pageSize
+    ) {
+        Bundle options = new Bundle();
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE, page);
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, pageSize);
+
+        AtomicReference<List<MediaBrowserCompat.MediaItem>> loaded = new AtomicReference<>();
+        browser.subscribe(
+            parentId,
+            options,
+            new MediaBrowserCompat.SubscriptionCallback() {
+                @Override
+                public void onChildrenLoaded(
+                    @NonNull String loadedParentId,
+                    @NonNull List<MediaBrowserCompat.MediaItem> children,
+                    @NonNull Bundle loadedOptions
+                ) {
+                    loaded.set(children);
+                }
+            }
+        );
+        idleMainLooper();
+        return loaded;
+    }
+
+    private static List<MediaBrowserCompat.MediaItem> items(String... mediaIds) {
+        List<MediaBrowserCompat.MediaItem> items = new ArrayList<>();
+        for (String mediaId : mediaIds) {
+            MediaDescriptionCompat description = new MediaDescriptionCompat.Builder().setMediaId(mediaId).build();
+            items.add(new MediaBrowserCompat.MediaItem(description, MediaBrowserCompat.MediaItem.FLAG_PLAYABLE));
+        }
+        return items;
+    }
+
+    private static void idleMainLooper() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
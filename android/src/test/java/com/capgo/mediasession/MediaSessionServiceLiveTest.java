@@ -0,0 +1,109 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Intent;
+import android.os.Looper;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+import androidx.test.core.app.ApplicationProvider;
+import java.time.Duration;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaSessionServiceLiveTest {
+
+    private ServiceController<MediaSessionService> controller;
+    private MediaSessionService service;
+    private MediaControllerCompat mediaController;
+
+    @Before
+    public void setUp() {
+        Application application = ApplicationProvider.getApplicationContext();
+        controller = Robolectric.buildService(MediaSessionService.class).create();
+        service = controller.get();
+        Intent intent = new Intent(application, MediaSessionService.class);
+        service.onBind(intent);
+        service.connectAndInitialize(new TestMediaSessionPlugin(), intent);
+        mediaController = new MediaControllerCompat(application, service.getSessionToken());
+
+        service.setLive(true);
+        service.setPlaybackState(PlaybackStateCompat.STATE_PLAYING);
+        service.setPosition(10000);
+        service.update();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+    }
+
+    @Test
+    public void republishedStateKeepsExtrapolatedPosition() {
+        advance(Duration.ofSeconds(60));
+        // Matches the extrapolated position, so it is dropped.
+        service.setPosition(70200);
+
+        service.setPlaybackState(PlaybackStateCompat.STATE_PAUSED);
+        service.update();
+
+        assertEquals(70000, mediaController.getPlaybackState().getPosition());
+    }
+
+    @Test
+    public void liveReportNearExtrapolationIsNotRepublished() throws JSONException {
+        advance(Duration.ofSeconds(30));
+        long recorded = recordedEvents();
+
+        service.setPosition(40500);
+        service.update();
+
+        assertEquals(recorded, recordedEvents());
+    }
+
+    @Test
+    public void liveReportThatDriftsIsRepublished() {
+        advance(Duration.ofSeconds(30));
+
+        service.setPosition(5000);
+        service.update();
+
+        assertEquals(5000, mediaController.getPlaybackState().getPosition());
+    }
+
+    @Test
+    public void seekWindowStaysOutOfMetadata() throws JSONException {
+        service.setDuration(120000);
+        service.update();
+        long recorded = recordedEvents();
+
+        // Only whether a window exists changes the actions, its length is not republished.
+        service.setDuration(125000);
+        service.update();
+
+        assertEquals(recorded, recordedEvents());
+        assertEquals(0, mediaController.getMetadata().getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+    }
+
+    private static long recordedEvents() throws JSONException {
+        JSONObject diagnostics = SessionEventLog.get().toJSObject();
+        return diagnostics.getLong("dropped") + diagnostics.getJSONArray("events").length();
+    }
+
+    private static void advance(Duration duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration);
+    }
+}
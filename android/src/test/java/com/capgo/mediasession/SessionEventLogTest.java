@@ -0,0 +1,96 @@
+package com.capgo.mediasession;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import com.getcapacitor.JSObject;
+import com.sun.management.ThreadMXBean;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SessionEventLogTest {
+
+    private static final int BENCHMARK_EVENTS = 100000;
+    // Any object allocated per event costs at least 16 bytes, this leaves room for fixed costs only.
+    private static final double MAX_RECORD_ALLOCATION_BYTES = 8;
+
+    @Test
+    public void keepsEveryEventBeforeBufferFills() throws JSONException {
+        SessionEventLog log = new SessionEventLog(4);
+        for (int i = 0; i < 3; i++) {
+            log.record(SessionEventLog.BRIDGE_CALL, "setMetadata", i);
+        }
+
+        JSObject diagnostics = log.toJSObject();
+        JSONArray events = diagnostics.getJSONArray("events");
+        assertEquals(3, events.length());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, events.getJSONObject(i).getLong("value"));
+        }
+        assertEquals("bridge-call", events.getJSONObject(0).getString("type"));
+        assertEquals("setMetadata", events.getJSONObject(0).getString("detail"));
+        assertEquals(0, diagnostics.getLong("dropped"));
+    }
+
+    @Test
+    public void keepsMostRecentEventsAfterWraparound() throws JSONException {
+        SessionEventLog log = new SessionEventLog(4);
+        for (int i = 0; i < 10; i++) {
+            log.record(SessionEventLog.ACTION_CALLBACK, "play", i);
+        }
+
+        JSObject diagnostics = log.toJSObject();
+        JSONArray events = diagnostics.getJSONArray("events");
+        assertEquals(4, events.length());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, events.getJSONObject(i).getLong("value"));
+        }
+        assertEquals(6, diagnostics.getLong("dropped"));
+    }
+
+    @Test
+    public void dumpListsEventsOldestFirst() {
+        SessionEventLog log = new SessionEventLog(2);
+        log.record(SessionEventLog.SERVICE_BIND, "plugin");
+        log.record(SessionEventLog.DIRTY_FLAGS, null, 0x5);
+        log.record(SessionEventLog.NOTIFICATION_POSTED, "Title");
+
+        StringWriter output = new StringWriter();
+        log.dump(new PrintWriter(output));
+        String dump = output.toString();
+
+        assertTrue(dump.contains("(2 of 3, oldest first)"));
+        assertFalse(dump.contains("service-bind"));
+        assertTrue(dump.contains("dirty-flags flags=0x5"));
+        assertTrue(dump.indexOf("dirty-flags") < dump.indexOf("notification-posted Title"));
+    }
+
+    @Test
+    public void recordDoesNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        SessionEventLog log = new SessionEventLog(256);
+        // Warm up so class loading and call site linking are not counted.
+        for (int i = 0; i < BENCHMARK_EVENTS; i++) {
+            log.record(SessionEventLog.BRIDGE_CALL, "benchmark", i);
+        }
+
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < BENCHMARK_EVENTS; i++) {
+            log.record(SessionEventLog.BRIDGE_CALL, "benchmark", i);
+        }
+        double allocation = (double) (threads.getCurrentThreadAllocatedBytes() - start) / BENCHMARK_EVENTS;
+
+        assertTrue("record allocated " + allocation + " bytes/event", allocation < MAX_RECORD_ALLOCATION_BYTES);
+    }
+}
@@ -0,0 +1,51 @@
+package com.capgo.mediasession;
+
+import android.graphics.Bitmap;
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plugin without a bridge: plugin-thread work and artwork loads run inline, covers are blank
+ * {@link #ARTWORK_SIZE} squares, and action callbacks are recorded instead of resolved.
+ */
+class TestMediaSessionPlugin extends MediaSessionPlugin {
+
+    static final int ARTWORK_SIZE = 512;
+
+    final Set<String> handledActions = new HashSet<>();
+    final List<String> actions = new ArrayList<>();
+    final List<String> loadedArtwork;
+
+    TestMediaSessionPlugin() {
+        this(new ArrayList<>());
+    }
+
+    private TestMediaSessionPlugin(List<String> loadedArtwork) {
+        super(
+            (src) -> {
+                loadedArtwork.add(src);
+                return Bitmap.createBitmap(ARTWORK_SIZE, ARTWORK_SIZE, Bitmap.Config.ARGB_8888);
+            },
+            new DirectExecutorService()
+        );
+        this.loadedArtwork = loadedArtwork;
+    }
+
+    @Override
+    void runOnPluginThread(Runnable runnable) {
+        runnable.run();
+    }
+
+    @Override
+    public boolean hasActionHandler(String action) {
+        return handledActions.contains(action);
+    }
+
+    @Override
+    public void actionCallback(String action, JSObject data) {
+        actions.add(action);
+    }
+}
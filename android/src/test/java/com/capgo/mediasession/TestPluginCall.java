@@ -0,0 +1,32 @@
+package com.capgo.mediasession;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/**
+ * Call without a bridge: the result is kept for the test instead of being sent to JS.
+ */
+class TestPluginCall extends PluginCall {
+
+    JSObject result;
+    String error;
+
+    TestPluginCall(String methodName, JSObject data) {
+        super(null, "MediaSession", "test", methodName, data);
+    }
+
+    @Override
+    public void resolve(JSObject data) {
+        result = data;
+    }
+
+    @Override
+    public void resolve() {
+        result = new JSObject();
+    }
+
+    @Override
+    public void reject(String msg, String code, Exception ex, JSObject data) {
+        error = msg;
+    }
+}
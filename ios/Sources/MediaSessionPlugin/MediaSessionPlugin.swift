@@ -12,44 +12,64 @@ public class MediaSessionPlugin: CAPPlugin, CAPBridgedPlugin {
         CAPPluginMethod(name: "setPlaybackState", returnType: CAPPluginReturnPromise),
         CAPPluginMethod(name: "setActionHandler", returnType: CAPPluginReturnPromise),
         CAPPluginMethod(name: "setPositionState", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "setQueue", returnType: CAPPluginReturnPromise),
+        CAPPluginMethod(name: "setActiveQueueItem", returnType: CAPPluginReturnPromise),
         CAPPluginMethod(name: "getPluginVersion", returnType: CAPPluginReturnPromise)
     ]
 
     private var nowPlayingInfo: [String: Any] = [:]
     private var registeredCommands: Set<String> = []
+    private var queueItems: [[String: Any]] = []
 
     /// Sets the Now Playing metadata (title, artist, album, artwork).
     @objc func setMetadata(_ call: CAPPluginCall) {
+        var metadata: [String: Any] = [:]
+        metadata["title"] = call.getString("title")
+        metadata["artist"] = call.getString("artist")
+        metadata["album"] = call.getString("album")
+        metadata["artwork"] = call.getArray("artwork")
         DispatchQueue.main.async {
-            var info: [String: Any] = [:]
-
-            if let title = call.getString("title") {
-                info[MPMediaItemPropertyTitle] = title
+            self.publishMetadata(metadata) {
+                call.resolve()
             }
-            if let artist = call.getString("artist") {
-                info[MPMediaItemPropertyArtist] = artist
+        }
+    }
+
+    /// Stores the play queue. Now Playing has no queue, so only the active item is published.
+    @objc func setQueue(_ call: CAPPluginCall) {
+        guard let items = call.getArray("items") as? [[String: Any]] else {
+            call.reject("items is required")
+            return
+        }
+        let activeIndex = call.getInt("activeIndex") ?? 0
+
+        DispatchQueue.main.async {
+            self.queueItems = items
+            guard items.indices.contains(activeIndex) else {
+                call.resolve()
+                return
             }
-            if let album = call.getString("album") {
-                info[MPMediaItemPropertyAlbumTitle] = album
+            self.publishMetadata(items[activeIndex]) {
+                call.resolve()
             }
+        }
+    }
 
-            // Handle artwork
-            if let artworkArray = call.getArray("artwork"),
-               artworkArray.count > 0,
-               let firstArtwork = artworkArray[0] as? [String: Any],
-               let src = firstArtwork["src"] as? String {
-                self.loadArtwork(from: src) { image in
-                    if let image = image {
-                        info[MPMediaItemPropertyArtwork] = MPMediaItemArtwork(boundsSize: image.size) { _ in image }
-                    }
-                    self.updateNowPlayingInfo(info)
-                    call.resolve()
-                }
+    /// Publishes the metadata of the queue item that is now playing.
+    @objc func setActiveQueueItem(_ call: CAPPluginCall) {
+        guard let id = call.getString("id") else {
+            call.reject("id is required")
+            return
+        }
+
+        DispatchQueue.main.async {
+            guard let item = self.queueItems.first(where: { ($0["id"] as? String) == id }) else {
+                call.reject("Queue item \(id) is not in the queue")
                 return
             }
-
-            self.updateNowPlayingInfo(info)
-            call.resolve()
+            self.publishMetadata(item) {
+                call.resolve()
+            }
         }
     }
 
@@ -154,18 +174,25 @@ public class MediaSessionPlugin: CAPPlugin, CAPBridgedPlugin {
         }
     }
 
-    /// Updates playback position state (duration, position, playbackRate).
+    /// Updates playback position state (duration, position, playbackRate, live).
     @objc func setPositionState(_ call: CAPPluginCall) {
         DispatchQueue.main.async {
             var info = self.nowPlayingInfo
+            let live = call.getBool("live") ?? false
+            info[MPNowPlayingInfoPropertyIsLiveStream] = live
 
             if let duration = call.getDouble("duration") {
                 info[MPMediaItemPropertyPlaybackDuration] = max(0, duration)
             }
             if let position = call.getDouble("position") {
-                let duration = (info[MPMediaItemPropertyPlaybackDuration] as? Double) ?? call.getDouble("duration") ?? 0
-                let clampedPosition = max(0, min(position, max(0, duration)))
-                info[MPNowPlayingInfoPropertyElapsedPlaybackTime] = clampedPosition
+                if live {
+                    // The duration of a live stream is only its seekable window, not a bound.
+                    info[MPNowPlayingInfoPropertyElapsedPlaybackTime] = max(0, position)
+                } else {
+                    let duration = (info[MPMediaItemPropertyPlaybackDuration] as? Double) ?? call.getDouble("duration") ?? 0
+                    let clampedPosition = max(0, min(position, max(0, duration)))
+                    info[MPNowPlayingInfoPropertyElapsedPlaybackTime] = clampedPosition
+                }
             }
             if let playbackRate = call.getDouble("playbackRate") {
                 info[MPNowPlayingInfoPropertyPlaybackRate] = playbackRate
@@ -182,6 +209,36 @@ public class MediaSessionPlugin: CAPPlugin, CAPBridgedPlugin {
         call.resolve(["version": self.pluginVersion])
     }
 
+    private func publishMetadata(_ metadata: [String: Any], completion: @escaping () -> Void) {
+        var info: [String: Any] = [:]
+
+        if let title = metadata["title"] as? String {
+            info[MPMediaItemPropertyTitle] = title
+        }
+        if let artist = metadata["artist"] as? String {
+            info[MPMediaItemPropertyArtist] = artist
+        }
+        if let album = metadata["album"] as? String {
+            info[MPMediaItemPropertyAlbumTitle] = album
+        }
+
+        // Handle artwork
+        if let artworkArray = metadata["artwork"] as? [Any],
+           let src = artworkArray.lazy.compactMap({ ($0 as? [String: Any])?["src"] as? String }).first {
+            loadArtwork(from: src) { image in
+                if let image = image {
+                    info[MPMediaItemPropertyArtwork] = MPMediaItemArtwork(boundsSize: image.size) { _ in image }
+                }
+                self.updateNowPlayingInfo(info)
+                completion()
+            }
+            return
+        }
+
+        updateNowPlayingInfo(info)
+        completion()
+    }
+
     private func loadArtwork(from urlString: String, completion: @escaping (UIImage?) -> Void) {
         guard let url = URL(string: urlString) else {
             completion(nil)
@@ -36,14 +36,177 @@ export type ActionHandler = (details: ActionDetails) => void;
 interface ActionDetails {
   action: MediaSessionAction;
   seekTime?: number | null;
+  /**
+   * For `nexttrack`/`previoustrack` while a queue is set: id of the queue item that was swapped in.
+   */
+  queueItemId?: string;
+  /**
+   * For `nexttrack`/`previoustrack` while a queue is set: milliseconds between the skip press and
+   * the updated notification.
+   */
+  skipLatency?: number;
+}
+
+export interface QueueItem {
+  id: string;
+  album?: string;
+  artist?: string;
+  artwork?: MediaImage[];
+  title?: string;
+}
+
+export interface QueueOptions {
+  items: QueueItem[];
+  /**
+   * Index of the item currently playing.
+   *
+   * @default 0
+   */
+  activeIndex?: number;
+  /**
+   * Number of upcoming items whose artwork is downloaded and decoded ahead of time.
+   *
+   * @default 2
+   */
+  prefetchCount?: number;
+  /**
+   * Upper bound, in bytes, for the decoded artwork held by the prefetched items.
+   *
+   * @default 8388608
+   */
+  prefetchMemoryBudget?: number;
+  /**
+   * Also swap in the previous item natively on `previoustrack`. Off by default because players
+   * usually restart the current track instead.
+   *
+   * @default false
+   */
+  swapOnPrevious?: boolean;
+}
+
+export interface ActiveQueueItemOptions {
+  /**
+   * Id of the queue item that is now playing.
+   */
+  id: string;
+}
+
+export interface BrowseItem {
+  id: string;
+  title?: string;
+  subtitle?: string;
+  /**
+   * Only `http(s)`/`content` sources are forwarded, browser clients load the icon themselves.
+   */
+  artwork?: MediaImage[];
+  /**
+   * Whether the item has children of its own.
+   *
+   * @default false
+   */
+  browsable?: boolean;
+  /**
+   * @default !browsable
+   */
+  playable?: boolean;
+}
+
+export interface BrowseRequest {
+  requestId: string;
+  /**
+   * Id of the node whose children are requested, `'root'` for the top level.
+   */
+  parentId: string;
+  /**
+   * Zero-based page, set when the browser client asked for a paginated result.
+   */
+  page?: number;
+  pageSize?: number;
+}
+
+export type BrowseHandler = (request: BrowseRequest) => void;
+
+export interface BrowseHandlerOptions {
+  /**
+   * Number of loaded pages kept in the least-recently-used cache.
+   *
+   * @default 64
+   */
+  maxCachedPages?: number;
+}
+
+export interface BrowseChildrenOptions {
+  requestId: string;
+  items: BrowseItem[];
+}
+
+export interface InvalidateBrowseChildrenOptions {
+  /**
+   * Node to reload, the whole tree when omitted.
+   */
+  parentId?: string;
 }
 
 export interface PositionStateOptions {
+  /**
+   * For live streams, the length of the seekable (DVR) window, or 0 when the stream cannot be
+   * seeked.
+   */
   duration?: number;
+  /**
+   * Marks the media as a live stream. The duration is then kept out of the metadata, seeking is
+   * limited to the reported window, and positions are only republished when they drift from the
+   * extrapolated position.
+   *
+   * @default false
+   */
+  live?: boolean;
   playbackRate?: number;
   position?: number;
 }
 
+/**
+ * How far the Android service has degraded its artwork under memory pressure:
+ * `downscaled` keeps a small copy, `uri-only` publishes only the artwork URI and `purged` also
+ * empties the caches.
+ */
+export type MemoryTier = 'full' | 'downscaled' | 'uri-only' | 'purged';
+
+export interface MemoryState {
+  tier: MemoryTier;
+  /**
+   * Bytes of decoded artwork currently held by the plugin, the service and the queue.
+   */
+  artworkBytes: number;
+}
+
+export interface SessionEvent {
+  /**
+   * Monotonic timestamp in milliseconds (`SystemClock.elapsedRealtimeNanos`).
+   */
+  time: number;
+  type: 'bridge-call' | 'dirty-flags' | 'notification-posted' | 'action-callback' | 'service-bind' | 'service-unbind';
+  /**
+   * Method name, action, notification title, or `plugin`, `plugin-rebind` or `browser` for binds.
+   */
+  detail?: string;
+  /**
+   * Dirty-flag bitmask for `dirty-flags`, 1 when an action callback reached a handler.
+   */
+  value: number;
+}
+
+export interface SessionDiagnostics {
+  /**
+   * Most recent events, oldest first.
+   */
+  events: SessionEvent[];
+  /**
+   * Events overwritten since the ring buffer filled up.
+   */
+  dropped: number;
+}
+
 export interface MediaSessionPlugin {
   /**
    * Sets metadata of the currently playing media.
@@ -61,6 +224,51 @@ export interface MediaSessionPlugin {
    * Updates position state for the active media session.
    */
   setPositionState(options: PositionStateOptions): Promise<void>;
+  /**
+   * Sets the play queue. On Android, `nexttrack` (and `previoustrack` with `swapOnPrevious`) then
+   * swaps in the prepared metadata of the neighbouring item before the action handler is called.
+   */
+  setQueue(options: QueueOptions): Promise<void>;
+  /**
+   * Tells the plugin which queue item is playing when the player moved on by itself, for example
+   * at the end of a track, and publishes that item's metadata. Keeps native skips in step with
+   * the player.
+   */
+  setActiveQueueItem(options: ActiveQueueItemOptions): Promise<void>;
+  /**
+   * Registers the handler that loads browse tree children for Android Auto, Wear and other media
+   * browser clients. Answer each request with `setBrowseChildren`. Loaded pages are cached until
+   * `invalidateBrowseChildren` is called.
+   *
+   * Only available on Android.
+   */
+  setBrowseHandler(options: BrowseHandlerOptions, handler: BrowseHandler | null): Promise<void>;
+  /**
+   * Answers a request received by the browse handler.
+   *
+   * Only available on Android.
+   */
+  setBrowseChildren(options: BrowseChildrenOptions): Promise<void>;
+  /**
+   * Drops cached browse children and tells connected browser clients to reload them.
+   *
+   * Only available on Android.
+   */
+  invalidateBrowseChildren(options?: InvalidateBrowseChildrenOptions): Promise<void>;
+  /**
+   * Returns the current memory degradation tier and the artwork memory it holds. Full quality
+   * is restored automatically once the system is no longer low on memory.
+   *
+   * Only available on Android.
+   */
+  getMemoryState(): Promise<MemoryState>;
+  /**
+   * Returns the ring buffer of recent session events. The same log is printed by
+   * `adb shell dumpsys activity service <appId>/com.capgo.mediasession.MediaSessionService`.
+   *
+   * Only available on Android.
+   */
+  dumpDiagnostics(): Promise<SessionDiagnostics>;
 
   /**
    * Get the native Capacitor plugin version
@@ -3,13 +3,24 @@ import { WebPlugin } from '@capacitor/core';
 import type {
   ActionHandler,
   ActionHandlerOptions,
+  ActiveQueueItemOptions,
+  BrowseChildrenOptions,
+  BrowseHandler,
+  BrowseHandlerOptions,
+  InvalidateBrowseChildrenOptions,
   MediaSessionPlugin,
+  MemoryState,
   MetadataOptions,
   PlaybackStateOptions,
   PositionStateOptions,
+  QueueItem,
+  QueueOptions,
+  SessionDiagnostics,
 } from './definitions';
 
 export class MediaSessionWeb extends WebPlugin implements MediaSessionPlugin {
+  private queueItems: QueueItem[] = [];
+
   async setMetadata(options: MetadataOptions): Promise<void> {
     const mediaSession = (navigator as any).mediaSession;
     if (!mediaSession) {
@@ -45,7 +56,50 @@ export class MediaSessionWeb extends WebPlugin implements MediaSessionPlugin {
     if (!mediaSession) {
       throw this.unavailable('Media Session API not available in this browser.');
     }
-    mediaSession.setPositionState(options);
+    const { live, ...positionState } = options;
+    mediaSession.setPositionState(live ? { ...positionState, duration: Infinity } : positionState);
+  }
+
+  async setQueue(options: QueueOptions): Promise<void> {
+    // The web Media Session API has no queue, only the active item is published.
+    this.queueItems = options.items;
+    const activeItem = options.items[options.activeIndex ?? 0];
+    if (activeItem) {
+      await this.publishQueueItem(activeItem);
+    }
+  }
+
+  async setActiveQueueItem(options: ActiveQueueItemOptions): Promise<void> {
+    const activeItem = this.queueItems.find((item) => item.id === options.id);
+    if (!activeItem) {
+      throw new Error(`Queue item ${options.id} is not in the queue`);
+    }
+    await this.publishQueueItem(activeItem);
+  }
+
+  private async publishQueueItem(item: QueueItem): Promise<void> {
+    const { title, artist, album, artwork } = item;
+    await this.setMetadata({ title, artist, album, artwork });
+  }
+
+  async setBrowseHandler(_options: BrowseHandlerOptions, _handler: BrowseHandler | null): Promise<void> {
+    throw this.unimplemented('Browsing is only available on Android.');
+  }
+
+  async setBrowseChildren(_options: BrowseChildrenOptions): Promise<void> {
+    throw this.unimplemented('Browsing is only available on Android.');
+  }
+
+  async invalidateBrowseChildren(_options?: InvalidateBrowseChildrenOptions): Promise<void> {
+    throw this.unimplemented('Browsing is only available on Android.');
+  }
+
+  async getMemoryState(): Promise<MemoryState> {
+    throw this.unimplemented('Memory state is only available on Android.');
+  }
+
+  async dumpDiagnostics(): Promise<SessionDiagnostics> {
+    throw this.unimplemented('Diagnostics are only available on Android.');
   }
 
   async getPluginVersion(): Promise<{ version: string }> {